@@ -0,0 +1,19 @@
+package com.usbank.corp.dcr.api.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Request for the next eligible campaign of many users of one company
+ */
+@Data
+public class BulkNextCampaignRequest {
+
+    /** Request date in format yyyyMMdd */
+    private String date;
+
+    private String company;
+
+    private List<String> userIds;
+}
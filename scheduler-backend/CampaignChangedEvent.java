@@ -0,0 +1,39 @@
+package com.usbank.corp.dcr.api.event;
+
+/**
+ * Published whenever a CampaignMapping row is inserted, deleted or has its
+ * eligibility or served content updated through JPA. Listeners that hold
+ * derived campaign state (caches, indexes) should react after the
+ * surrounding transaction commits.
+ */
+public class CampaignChangedEvent {
+    
+    private final String campaignId;
+    private final String previousCompanyNames;
+    private final String companyNames;
+    
+    public CampaignChangedEvent(String campaignId, String previousCompanyNames, String companyNames) {
+        this.campaignId = campaignId;
+        this.previousCompanyNames = previousCompanyNames;
+        this.companyNames = companyNames;
+    }
+    
+    public String getCampaignId() {
+        return campaignId;
+    }
+    
+    /**
+     * Pipe-separated company names before the change, empty for inserts,
+     * null if unknown (the campaign was not loaded before it was written)
+     */
+    public String getPreviousCompanyNames() {
+        return previousCompanyNames;
+    }
+    
+    /**
+     * Pipe-separated company names as of the change, null for deletes
+     */
+    public String getCompanyNames() {
+        return companyNames;
+    }
+}
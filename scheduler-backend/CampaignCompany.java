@@ -0,0 +1,79 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Normalized campaign to company assignment
+ * One row per company listed in CampaignMapping.companyNames
+ */
+@Entity
+@Table(name = "campaign_company_mapping",
+       indexes = @Index(name = "ix_campaign_company_company", columnList = "company_name, campaign_id"))
+@IdClass(CampaignCompany.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CampaignCompany {
+    @Id
+    @Column(nullable = false, name = "campaign_id")
+    private String campaignId;
+    
+    @Id
+    @Column(nullable = false, name = "company_name")
+    private String companyName;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private String campaignId;
+        private String companyName;
+    }
+}
+
+package com.usbank.corp.dcr.api.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.usbank.corp.dcr.api.entity.CampaignCompany;
+
+@Repository
+public interface CampaignCompanyRepository extends JpaRepository<CampaignCompany, CampaignCompany.Key> {
+    
+    /**
+     * Find all company assignments for a campaign
+     * 
+     * @param campaignId Campaign ID
+     * @return List of assignments
+     */
+    List<CampaignCompany> findByCampaignId(String campaignId);
+    
+    /**
+     * Remove all company assignments for a campaign
+     * 
+     * @param campaignId Campaign ID
+     * @return Number of rows removed
+     */
+    @Modifying
+    @Query("DELETE FROM CampaignCompany cc WHERE cc.campaignId = :campaignId")
+    int deleteByCampaignId(@Param("campaignId") String campaignId);
+}
@@ -0,0 +1,323 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.entity.CampaignCompany;
+import com.usbank.corp.dcr.api.event.CampaignChangedEvent;
+import com.usbank.corp.dcr.api.repository.CampaignCompanyRepository;
+import com.usbank.corp.dcr.api.repository.CampaignRepository;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.LeaseLostException;
+
+/**
+ * Inverted index from company to campaigns
+ *
+ * Keeps the campaign_company_mapping join table in sync with the
+ * pipe-separated company_names column and holds the same assignments in
+ * memory, so eligibility checks are exact hash lookups instead of
+ * substring matches. Company keys are compared case-insensitively, the
+ * same way the default SQL Server collation compares them.
+ *
+ * The join table is written in the transaction that saves the campaign, so
+ * it commits together with company_names and is current by the time caches
+ * are invalidated. Changes made outside this application are repaired by a
+ * periodic reconcile on the instance holding its scheduler lock; every
+ * instance rebuilds its in-memory index from the tables.
+ */
+@Service
+public class CampaignCompanyIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignCompanyIndex.class);
+
+    private static final String DELETE_ASSIGNMENTS = "DELETE FROM [dbo].[campaign_company_mapping] "
+            + "WHERE campaign_id = ?";
+
+    private static final String INSERT_ASSIGNMENT = "INSERT INTO [dbo].[campaign_company_mapping] "
+            + "(campaign_id, company_name) VALUES (?, ?)";
+
+    // Locks the campaign row, so a repair cannot interleave with a save of the same campaign
+    private static final String LOCK_COMPANY_NAMES = "SELECT company_names FROM [dbo].[campaigns_dev_rotation1] "
+            + "WITH (UPDLOCK, HOLDLOCK) WHERE id = ?";
+
+    static final String RECONCILE_JOB = "company-index-reconcile";
+
+    private final CampaignRepository campaignRepository;
+    private final CampaignCompanyRepository campaignCompanyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SchedulerLockService schedulerLockService;
+
+    // Normalized company key -> campaign ids; replaced wholesale on rebuild
+    private volatile Map<String, Set<String>> campaignsByCompany = new ConcurrentHashMap<>();
+
+    // Campaign id -> company names as listed on the campaign
+    private volatile Map<String, List<String>> companiesByCampaign = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    @Autowired
+    public CampaignCompanyIndex(CampaignRepository campaignRepository,
+                                CampaignCompanyRepository campaignCompanyRepository,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                SchedulerLockService schedulerLockService) {
+        this.campaignRepository = campaignRepository;
+        this.campaignCompanyRepository = campaignCompanyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.schedulerLockService = schedulerLockService;
+    }
+
+    /**
+     * Split a pipe-separated company list
+     *
+     * @param companyNames Value of the company_names column
+     * @return Trimmed, de-duplicated company names in their original order
+     */
+    public static List<String> parseCompanies(String companyNames) {
+        if (companyNames == null || companyNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> companies = new LinkedHashSet<>();
+        int start = 0;
+        while (start <= companyNames.length()) {
+            int end = companyNames.indexOf('|', start);
+            if (end < 0) {
+                end = companyNames.length();
+            }
+            String company = companyNames.substring(start, end).trim();
+            if (!company.isEmpty()) {
+                companies.add(company);
+            }
+            start = end + 1;
+        }
+
+        return new ArrayList<>(companies);
+    }
+
+    /**
+     * @return true once the index has been loaded from the database
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Get ids of all campaigns assigned to a company
+     *
+     * @param company Company identifier
+     * @return Campaign ids, empty if none
+     */
+    public Set<String> getCampaignIds(String company) {
+        if (company == null) {
+            return Collections.emptySet();
+        }
+        return campaignsByCompany.getOrDefault(normalize(company), Collections.emptySet());
+    }
+
+    /**
+     * Get the companies a campaign is assigned to
+     * Falls back to parsing the given company names if the campaign is not indexed yet
+     *
+     * @param campaignId Campaign identifier
+     * @param companyNames Pipe-separated company names of the campaign
+     * @return Company names
+     */
+    public List<String> getCompanies(String campaignId, String companyNames) {
+        List<String> companies = companiesByCampaign.get(campaignId);
+        return companies != null ? companies : parseCompanies(companyNames);
+    }
+
+    /**
+     * Rebuild the in-memory index from the campaigns table
+     * Runs at startup and periodically to pick up changes made outside this
+     * application. The instance holding the reconcile lock also repairs join
+     * table rows that disagree with company_names.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${campaign.company-index.reconcile-interval-ms:600000}",
+               initialDelayString = "${campaign.company-index.reconcile-interval-ms:600000}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Lease lease = schedulerLockService.tryAcquire(RECONCILE_JOB);
+
+        try {
+            Map<String, Set<String>> persisted = new HashMap<>();
+            if (lease != null) {
+                for (CampaignCompany assignment : campaignCompanyRepository.findAll()) {
+                    persisted.computeIfAbsent(assignment.getCampaignId(), id -> new HashSet<>())
+                            .add(assignment.getCompanyName());
+                }
+            }
+
+            Map<String, Set<String>> byCompany = new HashMap<>();
+            Map<String, List<String>> byCampaign = new ConcurrentHashMap<>();
+            int repaired = 0;
+
+            for (Object[] row : campaignRepository.findAllCompanyAssignments()) {
+                String campaignId = (String) row[0];
+                String companyNames = (String) row[1];
+                List<String> companies = parseCompanies(companyNames);
+
+                if (lease != null) {
+                    Set<String> current = persisted.remove(campaignId);
+                    boolean stale = current == null
+                            ? !companies.isEmpty()
+                            : !current.equals(new HashSet<>(companies));
+                    if (stale && repairAssignments(campaignId, companyNames, lease)) {
+                        repaired++;
+                    }
+                }
+
+                if (!companies.isEmpty()) {
+                    byCampaign.put(campaignId, Collections.unmodifiableList(companies));
+                    for (String company : companies) {
+                        byCompany.computeIfAbsent(normalize(company), key -> new HashSet<>()).add(campaignId);
+                    }
+                }
+            }
+
+            // Whatever is left belongs to campaigns deleted behind our back
+            for (String campaignId : persisted.keySet()) {
+                if (repairAssignments(campaignId, null, lease)) {
+                    repaired++;
+                }
+            }
+
+            Map<String, Set<String>> campaignIdsByCompany = new ConcurrentHashMap<>();
+            for (Map.Entry<String, Set<String>> entry : byCompany.entrySet()) {
+                campaignIdsByCompany.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+            }
+
+            synchronized (this) {
+                campaignsByCompany = campaignIdsByCompany;
+                companiesByCampaign = byCampaign;
+            }
+
+            ready = true;
+            log.info("Company index rebuilt: {} campaigns, {} companies, {} assignments repaired in {} ms",
+                    companiesByCampaign.size(), campaignsByCompany.size(), repaired,
+                    System.currentTimeMillis() - start);
+        } catch (LeaseLostException e) {
+            log.warn("Lost the company index reconcile lock, stopping", e);
+        } finally {
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * Write the join table of a saved campaign
+     * Runs synchronously while the campaign is flushed, so the assignments
+     * commit or roll back with the campaign itself
+     */
+    @EventListener
+    public void onCampaignWritten(CampaignChangedEvent event) {
+        List<String> companies = parseCompanies(event.getCompanyNames());
+        if (event.getPreviousCompanyNames() != null
+                && new HashSet<>(parseCompanies(event.getPreviousCompanyNames())).equals(new HashSet<>(companies))) {
+            return;
+        }
+        replaceAssignments(event.getCampaignId(), companies);
+    }
+
+    /**
+     * Keep the in-memory index in step with committed campaign changes
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCampaignChanged(CampaignChangedEvent event) {
+        String campaignId = event.getCampaignId();
+        List<String> companies = parseCompanies(event.getCompanyNames());
+
+        List<String> current = companiesByCampaign.getOrDefault(campaignId, Collections.emptyList());
+        if (current.equals(companies)) {
+            return;
+        }
+
+        index(campaignId, companies);
+        log.info("Re-indexed campaign {} for companies {}", campaignId, companies);
+    }
+
+    /**
+     * Replace the assignments of a campaign read by the reconcile
+     * Skipped if the campaign was saved since it was read; that save wrote
+     * its own assignments
+     *
+     * @param companyNames company_names as read, null if the campaign no longer exists
+     * @return true if the join table was repaired
+     */
+    private boolean repairAssignments(String campaignId, String companyNames, Lease lease) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            lease.renew();
+            List<String> locked = jdbcTemplate.queryForList(LOCK_COMPANY_NAMES, String.class, campaignId);
+            if (!Objects.equals(locked.isEmpty() ? null : locked.get(0), companyNames)) {
+                return false;
+            }
+            replaceAssignments(campaignId, parseCompanies(companyNames));
+            return true;
+        }));
+    }
+
+    private void replaceAssignments(String campaignId, List<String> companies) {
+        jdbcTemplate.update(DELETE_ASSIGNMENTS, campaignId);
+        List<Object[]> assignments = new ArrayList<>(companies.size());
+        for (String company : companies) {
+            assignments.add(new Object[] { campaignId, company });
+        }
+        if (!assignments.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ASSIGNMENT, assignments);
+        }
+    }
+
+    private synchronized void index(String campaignId, List<String> companies) {
+        List<String> previous = companies.isEmpty()
+                ? companiesByCampaign.remove(campaignId)
+                : companiesByCampaign.put(campaignId, Collections.unmodifiableList(companies));
+
+        if (previous != null) {
+            for (String company : previous) {
+                campaignsByCompany.computeIfPresent(normalize(company), (key, ids) -> {
+                    Set<String> remaining = new HashSet<>(ids);
+                    remaining.remove(campaignId);
+                    return remaining.isEmpty() ? null : Collections.unmodifiableSet(remaining);
+                });
+            }
+        }
+
+        for (String company : companies) {
+            campaignsByCompany.compute(normalize(company), (key, ids) -> {
+                Set<String> updated = ids == null ? new HashSet<>() : new HashSet<>(ids);
+                updated.add(campaignId);
+                return Collections.unmodifiableSet(updated);
+            });
+        }
+    }
+
+    private static String normalize(String company) {
+        return company.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,23 +1,40 @@
 package com.usbank.corp.dcr.api.entity;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 @Entity
-@Table(name = "campaigns_dev_rotation1")
+@Table(name = "campaigns_dev_rotation1", indexes = {
+        @Index(name = "ix_campaigns_rotation_order", columnList = "rotation_position, created_date")
+})
+@EntityListeners(CampaignMappingListener.class)
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -64,6 +81,9 @@ public class CampaignMapping {
     @Column(name = "original_frequency_per_week")
     private Integer orginalFrequencyPerWeek;
     
+    @Column(name = "frequency_epoch_week")
+    private Integer frequencyEpochWeek; // Epoch week frequency_per_week belongs to, older means full
+    
     @Column(name = "display_capping")
     private Integer displayCapping;
     
@@ -98,6 +118,13 @@ public class CampaignMapping {
     @Column(name = "rotation_status")
     private String rotation_status; // null (show first), ROTATION_POSITION_X, ROTATED_RECENTLY, etc.
     
+    @Column(name = "rotation_state", length = 20)
+    @Enumerated(EnumType.STRING)
+    private RotationState rotationState; // Typed form of rotation_status
+    
+    @Column(name = "rotation_position")
+    private Integer rotationPosition; // Position in this week's rotation, 0 or null shows first
+    
     @Column(name = "rotation_priority")
     private Integer rotationPriority; // Optional explicit priority (lower = higher priority)
     
@@ -107,6 +134,20 @@ public class CampaignMapping {
     @Column(name = "form_submission_url")
     private String formSubmissionUrl; // URL for form submission
     
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String loadedCompanyNames; // company_names as loaded, see CampaignMappingListener
+    
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private List<Object> loadedServedState; // servedState() as loaded, null if never loaded
+    
     /**
      * Check if the campaign is eligible for display
      * 
@@ -115,6 +156,19 @@ public class CampaignMapping {
      */
     @Transient
     public boolean isEligibleForDisplay(Date currentDate) {
+        // Must have available weekly frequency
+        return isOpenForDisplay(currentDate) && frequencyPerWeek > 0;
+    }
+    
+    /**
+     * Check if the campaign may be displayed, leaving the weekly frequency
+     * to CampaignQuotaCounters
+     * 
+     * @param currentDate Current date
+     * @return true if eligible apart from the weekly frequency, false otherwise
+     */
+    @Transient
+    public boolean isOpenForDisplay(Date currentDate) {
         // Must be within date range
         if (currentDate.before(startDate) || currentDate.after(endDate)) {
             return false;
@@ -125,11 +179,6 @@ public class CampaignMapping {
             return false;
         }
         
-        // Must have available weekly frequency
-        if (frequencyPerWeek <= 0) {
-            return false;
-        }
-        
         // Must not be completed
         if ("COMPLETED".equals(visibility)) {
             return false;
@@ -143,6 +192,41 @@ public class CampaignMapping {
         return true;
     }
     
+    /**
+     * Get the weekly frequency left in a given week
+     * A counter from an older week counts as full, so no reset write is needed
+     * 
+     * @param epochWeek Epoch week, see RotationUtils.getEpochWeek
+     * @return Remaining weekly frequency
+     */
+    @Transient
+    public Integer getFrequencyForWeek(int epochWeek) {
+        if ((frequencyEpochWeek == null || frequencyEpochWeek < epochWeek) && orginalFrequencyPerWeek != null) {
+            return orginalFrequencyPerWeek;
+        }
+        return frequencyPerWeek;
+    }
+    
+    /**
+     * Move the weekly frequency counter to a given week
+     * Refills the counter if it belongs to an older week
+     * 
+     * @param epochWeek Epoch week, see RotationUtils.getEpochWeek
+     */
+    @Transient
+    public void rollOverToWeek(int epochWeek) {
+        if (frequencyEpochWeek != null && frequencyEpochWeek >= epochWeek) {
+            return;
+        }
+        
+        frequencyPerWeek = getFrequencyForWeek(epochWeek);
+        frequencyEpochWeek = epochWeek;
+        if (rotationState == RotationState.ROTATED_RECENTLY) {
+            rotation_status = null;
+            rotationState = RotationState.IN_ROTATION;
+        }
+    }
+    
     /**
      * Check if weekly frequency needs to be reset
      * 
@@ -193,10 +277,60 @@ public class CampaignMapping {
         // Update rotation status if weekly frequency is exhausted
         if (frequencyPerWeek <= 0 && displayCapping > 0) {
             rotation_status = "ROTATED_RECENTLY";
+            rotationState = RotationState.ROTATED_RECENTLY;
         } else {
             rotation_status = null;
+            rotationState = RotationState.IN_ROTATION;
         }
         
         return true;
     }
+    
+    /**
+     * Remember the served state as it is in the database
+     * Called by CampaignMappingListener after loading and after every write
+     */
+    @Transient
+    void markLoaded() {
+        loadedCompanyNames = companyNames;
+        loadedServedState = servedState();
+    }
+    
+    /**
+     * Company names as last loaded or written, null if the campaign was never loaded
+     */
+    @Transient
+    String getLoadedCompanyNames() {
+        return loadedServedState != null ? loadedCompanyNames : null;
+    }
+    
+    /**
+     * Check whether anything that decides eligibility or ends up in the served
+     * response changed since the campaign was loaded
+     * 
+     * @return true if changed or never loaded
+     */
+    @Transient
+    boolean isServedStateChanged() {
+        return loadedServedState == null || !loadedServedState.equals(servedState());
+    }
+    
+    /**
+     * Eligibility fields (companies, dates, status, visibility) and the fields
+     * copied into the response. Weekly counters, timestamps and rotation
+     * bookkeeping are left out, they change with every quota lease
+     * 
+     * @return New list of the field values, equal for equal served states
+     */
+    @Transient
+    public List<Object> servedState() {
+        return Arrays.asList(companyNames, time(startDate), time(endDate), status, visibility,
+                displayCapping, name, bannerId, insightType, insightSubType, insight, eligibleCompanies,
+                eligibleUsers, displayLocation, createdBy, time(createdDate), learnMoreUrl, formSubmissionUrl);
+    }
+    
+    // Hibernate loads java.sql.Date and Timestamp, whose equals differ from java.util.Date
+    private static Long time(Date date) {
+        return date != null ? date.getTime() : null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.usbank.corp.dcr.api.entity;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.usbank.corp.dcr.api.event.CampaignChangedEvent;
+
+/**
+ * JPA entity listener for CampaignMapping
+ * Turns every persisted change of a campaign's eligibility or served content
+ * into a CampaignChangedEvent so that in-memory campaign state can be
+ * invalidated without the writers knowing about it. Writes that only touch
+ * weekly counters, timestamps or rotation bookkeeping publish nothing.
+ */
+@Component
+public class CampaignMappingListener {
+    
+    private final ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    public CampaignMappingListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+    
+    @PostLoad
+    public void onLoaded(CampaignMapping campaign) {
+        campaign.markLoaded();
+    }
+    
+    @PostPersist
+    public void onCreated(CampaignMapping campaign) {
+        eventPublisher.publishEvent(new CampaignChangedEvent(campaign.getId(), "", campaign.getCompanyNames()));
+        campaign.markLoaded();
+    }
+    
+    @PostUpdate
+    public void onUpdated(CampaignMapping campaign) {
+        if (!campaign.isServedStateChanged()) {
+            return;
+        }
+        eventPublisher.publishEvent(new CampaignChangedEvent(campaign.getId(), 
+                campaign.getLoadedCompanyNames(), campaign.getCompanyNames()));
+        campaign.markLoaded();
+    }
+    
+    @PostRemove
+    public void onRemoved(CampaignMapping campaign) {
+        eventPublisher.publishEvent(new CampaignChangedEvent(campaign.getId(), campaign.getCompanyNames(), null));
+    }
+}
@@ -0,0 +1,38 @@
+package com.usbank.corp.dcr.api.model;
+
+/**
+ * A campaign as served by /next, serialized once per campaign version
+ *
+ * Instances are shared between requests: neither the bytes nor the
+ * campaign may be modified.
+ */
+public final class CampaignPayload {
+
+    private final CampaignResponseDTO campaign;
+    private final byte[] json;
+    private final String etag;
+
+    public CampaignPayload(CampaignResponseDTO campaign, byte[] json, String etag) {
+        this.campaign = campaign;
+        this.json = json;
+        this.etag = etag;
+    }
+
+    public CampaignResponseDTO getCampaign() {
+        return campaign;
+    }
+
+    /**
+     * UTF-8 JSON of the campaign
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * Strong entity tag of the JSON, quoted
+     */
+    public String getEtag() {
+        return etag;
+    }
+}
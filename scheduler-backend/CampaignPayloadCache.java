@@ -0,0 +1,124 @@
+package com.usbank.corp.dcr.api.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.event.CampaignChangedEvent;
+import com.usbank.corp.dcr.api.model.CampaignPayload;
+import com.usbank.corp.dcr.api.model.CampaignResponseDTO;
+
+/**
+ * Cache of serialized campaign responses, one per campaign
+ *
+ * Each entry keeps the served state of the campaign it was built from, the
+ * values of every field that ends up in the response or decides
+ * eligibility. A campaign whose served state is not equal to the cached one,
+ * for example after an update written with native SQL, is serialized again,
+ * so a payload never outlives the version it was built from. Entries are
+ * also dropped once a change to the campaign commits.
+ *
+ * frequencyPerWeek is deliberately not part of the served state: it drops
+ * with every quota lease and would rebuild the payload and change the ETag
+ * on nearly every request. The response carries the value the payload was
+ * built with; the live remaining quota is kept by CampaignQuotaCounters.
+ */
+@Component
+public class CampaignPayloadCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignPayloadCache.class);
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public CampaignPayloadCache(ObjectMapper objectMapper,
+                                @Value("${campaign.cache.payload.max-entries:10000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get the payload of a campaign, serializing it if this version is not cached
+     *
+     * @param campaign Campaign to serve
+     * @param mapper Builds the response DTO of the campaign
+     * @return Shared payload
+     */
+    public CampaignPayload get(CampaignMapping campaign, Function<CampaignMapping, CampaignResponseDTO> mapper) {
+        List<Object> servedState = campaign.servedState();
+        Entry entry = entries.get(campaign.getId());
+        if (entry != null && entry.servedState.equals(servedState)) {
+            hits.increment();
+            return entry.payload;
+        }
+        misses.increment();
+
+        CampaignResponseDTO response = mapper.apply(campaign);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize campaign " + campaign.getId(), e);
+        }
+        CampaignPayload payload = new CampaignPayload(response, json, 
+                "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+
+        if (entries.size() >= maxEntries && !entries.containsKey(campaign.getId())) {
+            // Far more campaigns than are ever active at once, start over
+            log.warn("Campaign payload cache reached {} entries, clearing it", maxEntries);
+            entries.clear();
+        }
+        entries.put(campaign.getId(), new Entry(servedState, payload));
+        return payload;
+    }
+
+    public void invalidate(String campaignId) {
+        entries.remove(campaignId);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCampaignChanged(CampaignChangedEvent event) {
+        invalidate(event.getCampaignId());
+    }
+
+    private static final class Entry {
+        private final List<Object> servedState;
+        private final CampaignPayload payload;
+
+        Entry(List<Object> servedState, CampaignPayload payload) {
+            this.servedState = servedState;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.repository.CampaignRepository;
+import com.usbank.corp.dcr.api.utils.RotationUtils;
+
+/**
+ * Weekly quota counters for campaigns, leased from the campaigns table
+ *
+ * Every instance claims blocks of impressions from a campaign's
+ * frequency_per_week with one conditional UPDATE and serves from that block
+ * locally. Because a block is only granted when the row still holds it, the
+ * sum of all blocks across instances never exceeds the weekly quota, and
+ * instances do not contend on the row per impression.
+ *
+ * Impressions are taken from the local block with a compare-and-set
+ * decrement that never goes below zero. The served impressions accumulate in
+ * a LongAdder and the campaign's timestamps and visibility are written by a
+ * periodic flush. Unused blocks go back to the row at the weekly reset and on
+ * shutdown.
+ *
+ * Counters are versioned by epoch week: a row whose frequency_epoch_week is
+ * older than the current week reads as a full quota, so the week rolls over
+ * on the first claim without any reset write. Impressions dated before the
+ * current week, e.g. from a client whose clock has not reached the rollover,
+ * are charged to the current week, and a counter is only ever replaced by
+ * one for a later week.
+ */
+@Service
+public class CampaignQuotaCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignQuotaCounters.class);
+
+    private static final int CLAIM_ATTEMPTS = 3;
+
+    private final CampaignRepository campaignRepository;
+    private final RotationUtils rotationUtils;
+    private final int leaseSize;
+    private final long exhaustedRetryMillis;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CampaignQuotaCounters(CampaignRepository campaignRepository, RotationUtils rotationUtils,
+                                 @Value("${campaign.quota.lease-size:20}") int leaseSize,
+                                 @Value("${campaign.quota.exhausted-retry-seconds:30}") long exhaustedRetrySeconds) {
+        this.campaignRepository = campaignRepository;
+        this.rotationUtils = rotationUtils;
+        this.leaseSize = leaseSize;
+        this.exhaustedRetryMillis = TimeUnit.SECONDS.toMillis(exhaustedRetrySeconds);
+    }
+
+    /**
+     * Take one impression from a campaign's weekly quota
+     *
+     * @param campaign Campaign to serve
+     * @param currentDate Date of the impression
+     * @return true if the impression was granted, false if the quota is exhausted
+     */
+    public boolean tryAcquire(CampaignMapping campaign, Date currentDate) {
+        Counter counter = counterFor(campaign.getId(), currentDate);
+
+        while (true) {
+            int leased = counter.leased.get();
+            if (leased > 0) {
+                if (counter.leased.compareAndSet(leased, leased - 1)) {
+                    counter.pendingImpressions.increment();
+                    counter.lastServed = currentDate.getTime();
+                    return true;
+                }
+                continue;
+            }
+
+            if (counter.exhaustedUntil > System.currentTimeMillis()) {
+                return false;
+            }
+
+            synchronized (counter) {
+                // Another thread may have refilled the lease while we waited
+                if (counter.leased.get() > 0) {
+                    continue;
+                }
+
+                int granted = claimLease(campaign.getId(), counter.epochWeek, new Date(counter.weekStart));
+                if (granted == 0) {
+                    counter.exhaustedUntil = System.currentTimeMillis() + exhaustedRetryMillis;
+                    return false;
+                }
+                counter.leased.addAndGet(granted);
+            }
+        }
+    }
+
+    /**
+     * Get when a campaign was last served, including impressions not flushed yet
+     *
+     * @param campaign Campaign
+     * @return Last served date, or null if never served
+     */
+    public Date getLastServed(CampaignMapping campaign) {
+        Counter counter = counters.get(campaign.getId());
+        Date updatedDate = campaign.getUpdatedDate();
+
+        if (counter == null || counter.lastServed == 0L) {
+            return updatedDate;
+        }
+        if (updatedDate != null && updatedDate.getTime() > counter.lastServed) {
+            return updatedDate;
+        }
+        return new Date(counter.lastServed);
+    }
+
+    /**
+     * Write the timestamps of campaigns served since the last flush
+     */
+    @Scheduled(fixedDelayString = "${campaign.counters.flush-interval-ms:5000}")
+    public void flush() {
+        int flushed = 0;
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            long impressions = counter.pendingImpressions.sumThenReset();
+            if (impressions == 0) {
+                continue;
+            }
+
+            try {
+                campaignRepository.recordImpressions(entry.getKey(), new Date(counter.lastServed));
+                flushed++;
+            } catch (RuntimeException e) {
+                // Keep the impressions for the next attempt
+                counter.pendingImpressions.add(impressions);
+                log.error("Failed to flush {} impressions for campaign {}", impressions, entry.getKey(), e);
+            }
+        }
+
+        if (flushed > 0) {
+            log.debug("Flushed impression counters for {} campaigns", flushed);
+        }
+    }
+
+    /**
+     * Give every unused leased impression back to its campaign row
+     * Leases are only returned to the week they were claimed for
+     *
+     * @return Number of impressions returned
+     */
+    public int releaseLeases() {
+        int released = 0;
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            int unused = counter.leased.getAndSet(0);
+            if (unused <= 0) {
+                continue;
+            }
+
+            try {
+                campaignRepository.returnQuota(entry.getKey(), unused, counter.epochWeek);
+                released += unused;
+            } catch (RuntimeException e) {
+                log.error("Failed to return {} leased impressions for campaign {}", unused, entry.getKey(), e);
+            }
+        }
+
+        log.info("Returned {} unused leased impressions", released);
+        return released;
+    }
+
+    /**
+     * Derive frequency_epoch_week for rows last leased before the column existed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateFrequencyWeeks() {
+        int migrated = campaignRepository.migrateFrequencyEpochWeek();
+        if (migrated > 0) {
+            log.info("Derived frequency epoch week of {} campaigns", migrated);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Flushing campaign counters and returning leases before shutdown");
+        flush();
+        releaseLeases();
+    }
+
+    /**
+     * Claim up to one lease block from the campaign row
+     *
+     * @return Number of impressions granted, 0 if the weekly quota is used up
+     */
+    private int claimLease(String campaignId, int epochWeek, Date weekStartDate) {
+        int wanted = leaseSize;
+
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            SelectionMetrics.countDatabaseCall();
+            if (campaignRepository.claimQuota(campaignId, wanted, epochWeek, weekStartDate) > 0) {
+                log.debug("Leased {} impressions of campaign {}", wanted, campaignId);
+                return wanted;
+            }
+
+            // Less than a full block left, claim whatever remains
+            SelectionMetrics.countDatabaseCall();
+            Integer available = campaignRepository.findAvailableQuota(campaignId, epochWeek);
+            if (available == null || available <= 0) {
+                return 0;
+            }
+            wanted = Math.min(leaseSize, available);
+        }
+
+        return 0;
+    }
+
+    private Counter counterFor(String campaignId, Date currentDate) {
+        // Never claim for a week before the current one
+        Date now = new Date();
+        Date claimDate = rotationUtils.getEpochWeek(currentDate) < rotationUtils.getEpochWeek(now) ? now : currentDate;
+        int epochWeek = rotationUtils.getEpochWeek(claimDate);
+
+        Counter counter = counters.get(campaignId);
+        if (counter != null && counter.epochWeek >= epochWeek) {
+            return counter;
+        }
+
+        // Leases of a past week are worthless once the week is over
+        return counters.compute(campaignId, (id, existing) ->
+                existing != null && existing.epochWeek >= epochWeek ? existing
+                        : new Counter(epochWeek, rotationUtils.getWeekStartDate(claimDate).getTime()));
+    }
+
+    private static final class Counter {
+        private final int epochWeek;
+        private final long weekStart;
+        private final AtomicInteger leased = new AtomicInteger();
+        private final LongAdder pendingImpressions = new LongAdder();
+        private volatile long lastServed;
+        private volatile long exhaustedUntil;
+
+        Counter(int epochWeek, long weekStart) {
+            this.epochWeek = epochWeek;
+            this.weekStart = weekStart;
+        }
+    }
+}
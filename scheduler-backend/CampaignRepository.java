@@ -30,18 +30,20 @@ public interface CampaignRepository extends JpaRepository<CampaignMapping, Strin
      * Campaigns are eligible if:
      * 1. Current date is between start and end date
      * 2. Not marked as COMPLETED for visibility
-     * 3. Company name matches
+     * 3. Company is assigned in campaign_company_mapping (exact match)
+     * Ordered by rotation position, campaigns without a position first
      * 
      * @param currentDate Current date in yyyy-MM-dd format
      * @param company Company identifier
      * @return List of eligible campaigns
      */
-    @Query(value = "SELECT * FROM [dbo].[campaigns_dev_rotation1] WHERE "
-            + "([start_date] <= :current_date AND [end_date] >= :current_date) "
-            + "AND (visibility is NULL OR visibility != 'COMPLETED') "
-            + "AND company_names LIKE %:company% "
-            + "AND (status = 'ACTIVE' OR status = 'SCHEDULED') "
-            + "ORDER BY created_date ASC", 
+    @Query(value = "SELECT c.* FROM [dbo].[campaigns_dev_rotation1] c "
+            + "INNER JOIN [dbo].[campaign_company_mapping] cc ON cc.campaign_id = c.id "
+            + "WHERE cc.company_name = :company "
+            + "AND (c.[start_date] <= :current_date AND c.[end_date] >= :current_date) "
+            + "AND (c.visibility is NULL OR c.visibility != 'COMPLETED') "
+            + "AND (c.status = 'ACTIVE' OR c.status = 'SCHEDULED') "
+            + "ORDER BY c.rotation_position ASC, c.created_date ASC", 
             nativeQuery = true)
     List<CampaignMapping> getEligibleCampaignsBasedonRequestDate(
             @Param("current_date") String currentDate,
@@ -97,6 +99,28 @@ public interface CampaignRepository extends JpaRepository<CampaignMapping, Strin
             @Param("week_start_date") Date weekStartDate,
             @Param("week_end_date") Date weekEndDate);
     
+    /**
+     * Find one page of the campaigns active during a week, ordered by id
+     * Used for keyset paging: pass the last id of the previous page
+     * 
+     * @param weekStartDate Start date of the week
+     * @param weekEndDate End date of the week
+     * @param afterId Only campaigns with a greater id are returned
+     * @param limit Maximum number of campaigns
+     * @return Page of active campaigns
+     */
+    @Query(value = "SELECT TOP (:limit) * FROM [dbo].[campaigns_dev_rotation1] WHERE "
+            + "start_date <= :week_end_date AND end_date >= :week_start_date "
+            + "AND (status = 'ACTIVE' OR status = 'SCHEDULED') "
+            + "AND id > :after_id "
+            + "ORDER BY id ASC", 
+            nativeQuery = true)
+    List<CampaignMapping> findCampaignsActiveInWeekAfter(
+            @Param("week_start_date") Date weekStartDate,
+            @Param("week_end_date") Date weekEndDate,
+            @Param("after_id") String afterId,
+            @Param("limit") int limit);
+    
     /**
      * Reset frequency for campaigns at the start of a new week
      */
@@ -110,7 +134,7 @@ public interface CampaignRepository extends JpaRepository<CampaignMapping, Strin
     
     /**
      * Get campaigns eligible for a specific user
-     * Considers display capping against user view history
+     * Considers display capping against the user's view counters
      * 
      * @param currentDate Current date
      * @param company Company identifier
@@ -118,21 +142,185 @@ public interface CampaignRepository extends JpaRepository<CampaignMapping, Strin
      * @return List of eligible campaigns
      */
     @Query(value = "SELECT c.* FROM [dbo].[campaigns_dev_rotation1] c "
-            + "LEFT JOIN ("
-            + "    SELECT campaign_id, COUNT(*) as view_count "
-            + "    FROM [dbo].[user_campaign_history] "
-            + "    WHERE user_id = :userId "
-            + "    GROUP BY campaign_id"
-            + ") h ON c.id = h.campaign_id "
-            + "WHERE (c.start_date <= :current_date AND c.end_date >= :current_date) "
+            + "LEFT JOIN [dbo].[user_campaign_view_count] h "
+            + "ON h.user_id = :userId AND c.id = h.campaign_id "
+            + "INNER JOIN [dbo].[campaign_company_mapping] cc ON cc.campaign_id = c.id "
+            + "WHERE cc.company_name = :company "
+            + "AND (c.start_date <= :current_date AND c.end_date >= :current_date) "
             + "AND (c.visibility is NULL OR c.visibility != 'COMPLETED') "
-            + "AND c.company_names LIKE %:company% "
             + "AND (c.status = 'ACTIVE' OR c.status = 'SCHEDULED') "
             + "AND (h.view_count IS NULL OR h.view_count < c.display_capping) "
-            + "ORDER BY c.created_date ASC", 
+            + "ORDER BY c.rotation_position ASC, c.created_date ASC", 
             nativeQuery = true)
     List<CampaignMapping> getEligibleCampaignsForUser(
             @Param("current_date") Date currentDate,
             @Param("company") String company,
             @Param("userId") String userId);
-}
\ No newline at end of file
+    
+    /**
+     * Get the raw company assignment of every campaign
+     * Used to build and reconcile the company index
+     * 
+     * @return Rows of [id, company_names]
+     */
+    @Query(value = "SELECT id, company_names FROM [dbo].[campaigns_dev_rotation1]", 
+            nativeQuery = true)
+    List<Object[]> findAllCompanyAssignments();
+    
+    /**
+     * Record the latest impression of a campaign since the last counter flush
+     * 
+     * @param campaignId Campaign ID
+     * @param servedDate Date of the latest impression
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "updated_date = :served_date, "
+            + "requested_date = :served_date, "
+            + "visibility = CASE WHEN display_capping = 1 THEN 'COMPLETED' ELSE 'VISIBLE' END "
+            + "WHERE id = :campaign_id", 
+            nativeQuery = true)
+    int recordImpressions(@Param("campaign_id") String campaignId,
+                          @Param("served_date") Date servedDate);
+    
+    /**
+     * Lease a block of impressions from a campaign's weekly quota
+     * Only succeeds if the whole block is still available. A row whose
+     * frequency_epoch_week is before the given week has not been used this
+     * week yet and starts again from its original quota. A row already in a
+     * later week is never claimed from, so a late claim for a past week
+     * cannot move the row back and have it refilled.
+     * 
+     * @param campaignId Campaign ID
+     * @param amount Number of impressions to lease
+     * @param epochWeek Current epoch week
+     * @param weekStartDate Start of the current week, kept in start_week_of_requested_date
+     * @return 1 if the block was granted, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "original_frequency_per_week = COALESCE(original_frequency_per_week, frequency_per_week), "
+            + "frequency_per_week = (CASE WHEN frequency_epoch_week IS NULL "
+            + "    OR frequency_epoch_week < :epoch_week "
+            + "    THEN COALESCE(original_frequency_per_week, frequency_per_week) "
+            + "    ELSE frequency_per_week END) - :amount, "
+            + "rotation_status = CASE WHEN display_capping > 0 AND (CASE WHEN frequency_epoch_week IS NULL "
+            + "    OR frequency_epoch_week < :epoch_week "
+            + "    THEN COALESCE(original_frequency_per_week, frequency_per_week) "
+            + "    ELSE frequency_per_week END) - :amount <= 0 "
+            + "    THEN 'ROTATED_RECENTLY' ELSE NULL END, "
+            + "rotation_state = CASE WHEN display_capping > 0 AND (CASE WHEN frequency_epoch_week IS NULL "
+            + "    OR frequency_epoch_week < :epoch_week "
+            + "    THEN COALESCE(original_frequency_per_week, frequency_per_week) "
+            + "    ELSE frequency_per_week END) - :amount <= 0 "
+            + "    THEN 'ROTATED_RECENTLY' ELSE 'IN_ROTATION' END, "
+            + "start_week_of_requested_date = :week_start_date, "
+            + "frequency_epoch_week = :epoch_week "
+            + "WHERE id = :campaign_id "
+            + "AND (frequency_epoch_week IS NULL OR frequency_epoch_week <= :epoch_week) "
+            + "AND (CASE WHEN frequency_epoch_week IS NULL "
+            + "    OR frequency_epoch_week < :epoch_week "
+            + "    THEN COALESCE(original_frequency_per_week, frequency_per_week) "
+            + "    ELSE frequency_per_week END) >= :amount", 
+            nativeQuery = true)
+    int claimQuota(@Param("campaign_id") String campaignId,
+                   @Param("amount") int amount,
+                   @Param("epoch_week") int epochWeek,
+                   @Param("week_start_date") Date weekStartDate);
+    
+    /**
+     * Get how many impressions of a campaign's weekly quota are still unleased
+     * 
+     * @param campaignId Campaign ID
+     * @param epochWeek Current epoch week
+     * @return Available impressions, null if the campaign does not exist
+     */
+    @Query(value = "SELECT (CASE WHEN frequency_epoch_week IS NULL "
+            + "    OR frequency_epoch_week < :epoch_week "
+            + "    THEN COALESCE(original_frequency_per_week, frequency_per_week) "
+            + "    ELSE frequency_per_week END) FROM [dbo].[campaigns_dev_rotation1] "
+            + "WHERE id = :campaign_id", 
+            nativeQuery = true)
+    Integer findAvailableQuota(@Param("campaign_id") String campaignId,
+                               @Param("epoch_week") int epochWeek);
+    
+    /**
+     * Give unused leased impressions back to a campaign's weekly quota
+     * Ignored if the row has already moved on to another week
+     * 
+     * @param campaignId Campaign ID
+     * @param amount Number of impressions to return
+     * @param epochWeek Epoch week the impressions were leased for
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "frequency_per_week = frequency_per_week + :amount, "
+            + "rotation_status = CASE WHEN rotation_status = 'ROTATED_RECENTLY' "
+            + "    THEN NULL ELSE rotation_status END, "
+            + "rotation_state = 'IN_ROTATION' "
+            + "WHERE id = :campaign_id AND frequency_epoch_week = :epoch_week", 
+            nativeQuery = true)
+    int returnQuota(@Param("campaign_id") String campaignId,
+                    @Param("amount") int amount,
+                    @Param("epoch_week") int epochWeek);
+    
+    /**
+     * Reset frequency for campaigns that have not been leased from in the given week
+     * Rows already leased from this week keep their remaining quota; rows whose
+     * frequency is already at its original value are left untouched. Not needed
+     * for correctness, since counters of an older week read as full anyway
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "frequency_per_week = original_frequency_per_week, "
+            + "rotation_status = CASE WHEN rotation_status = 'ROTATED_RECENTLY' "
+            + "    THEN NULL ELSE rotation_status END, "
+            + "rotation_state = 'IN_ROTATION', "
+            + "frequency_epoch_week = :epoch_week "
+            + "WHERE id IN :campaignIds "
+            + "AND original_frequency_per_week IS NOT NULL "
+            + "AND frequency_per_week != original_frequency_per_week "
+            + "AND (frequency_epoch_week IS NULL OR frequency_epoch_week < :epoch_week)", 
+            nativeQuery = true)
+    int resetWeeklyFrequencyBefore(@Param("campaignIds") List<String> campaignIds,
+                                   @Param("epoch_week") int epochWeek);
+    
+    /**
+     * Fill rotation_state and rotation_position from the legacy rotation_status
+     * Only touches rows that have not been migrated yet, so it is safe to run on every start
+     * 
+     * @return Number of rows migrated
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "rotation_state = CASE WHEN rotation_status = 'ROTATED_RECENTLY' "
+            + "    THEN 'ROTATED_RECENTLY' ELSE 'IN_ROTATION' END, "
+            + "rotation_position = CASE WHEN rotation_status IS NULL THEN 0 "
+            + "    WHEN rotation_status LIKE 'ROTATION[_]POSITION[_]%' "
+            + "    THEN TRY_CAST(SUBSTRING(rotation_status, 19, 10) AS INT) "
+            + "    ELSE NULL END "
+            + "WHERE rotation_state IS NULL", 
+            nativeQuery = true)
+    int migrateRotationStatus();
+    
+    /**
+     * Fill frequency_epoch_week from start_week_of_requested_date
+     * Only touches rows that have not been migrated yet, so it is safe to run on every start
+     * 
+     * @return Number of rows migrated
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE [dbo].[campaigns_dev_rotation1] SET "
+            + "frequency_epoch_week = (DATEDIFF(day, '19700101', start_week_of_requested_date) + 3) / 7 "
+            + "WHERE frequency_epoch_week IS NULL AND start_week_of_requested_date IS NOT NULL", 
+            nativeQuery = true)
+    int migrateFrequencyEpochWeek();
+}
@@ -1,21 +1,41 @@
 package com.usbank.corp.dcr.api.service;
 
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StopWatch;
 
 import com.usbank.corp.dcr.api.entity.CampaignMapping;
 import com.usbank.corp.dcr.api.repository.CampaignRepository;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.LeaseLostException;
 import com.usbank.corp.dcr.api.utils.RotationUtils;
 
 /**
@@ -27,80 +47,243 @@ public class CampaignRotationManager {
     
     private static final Logger log = LoggerFactory.getLogger(CampaignRotationManager.class);
     
+    private static final String ROTATION_POSITION = "ROTATION_POSITION_";
+    
+    static final String WEEKLY_RESET_JOB = "weekly-rotation-reset";
+    
+    private static final String UPDATE_ROTATION_POSITION = "UPDATE [dbo].[campaigns_dev_rotation1] "
+            + "SET rotation_position = ?, rotation_status = ? WHERE id = ?";
+    
     private final CampaignRepository campaignRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final RotationUtils rotationUtils;
+    private final CampaignCompanyIndex campaignCompanyIndex;
+    private final CampaignQuotaCounters campaignQuotaCounters;
+    private final SchedulerLockService schedulerLockService;
+    private final int chunkSize;
+    private final int parallelism;
+    
+    // Rotation plans by normalized company, replaced as a whole by the weekly reset
+    private final AtomicReference<Map<String, RotationPlan>> rotationPlans = 
+            new AtomicReference<>(Collections.emptyMap());
     
     @Autowired
-    public CampaignRotationManager(CampaignRepository campaignRepository, RotationUtils rotationUtils) {
+    public CampaignRotationManager(CampaignRepository campaignRepository, JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   RotationUtils rotationUtils,
+                                   CampaignCompanyIndex campaignCompanyIndex,
+                                   CampaignQuotaCounters campaignQuotaCounters,
+                                   SchedulerLockService schedulerLockService,
+                                   @Value("${campaign.rotation.reset.chunk-size:500}") int chunkSize,
+                                   @Value("${campaign.rotation.reset.parallelism:4}") int parallelism) {
         this.campaignRepository = campaignRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.rotationUtils = rotationUtils;
+        this.campaignCompanyIndex = campaignCompanyIndex;
+        this.campaignQuotaCounters = campaignQuotaCounters;
+        this.schedulerLockService = schedulerLockService;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
     }
     
     /**
      * Weekly scheduled task to reset campaign frequencies and manage rotation
      * Runs every Monday at 1:00 AM
+     * 
+     * Every instance returns its own quota leases, but only the instance
+     * holding the weekly reset lock resets and rotates the campaigns; the
+     * others only rebuild their rotation plans, which are deterministic.
      */
     @Scheduled(cron = "0 0 1 * * MON")
-    @Transactional
     public void weeklyRotationReset() {
         log.info("Starting weekly campaign rotation reset");
         
+        // Hand this instance's unused quota leases back before resetting
+        campaignQuotaCounters.releaseLeases();
+        
+        if (!runExclusively()) {
+            log.info("Weekly campaign rotation reset is running on another instance, rebuilding plans only");
+            loadRotationPlans();
+        }
+    }
+    
+    /**
+     * Take over a reset of this week that was started but not completed,
+     * e.g. because the instance running it died
+     */
+    @Scheduled(fixedDelayString = "${campaign.rotation.reset.resume-check-interval-ms:60000}",
+               initialDelayString = "${campaign.rotation.reset.resume-check-interval-ms:60000}")
+    public void resumeInterruptedReset() {
+        String runKey = runKey(rotationUtils.getWeekStartDate(new Date()));
+        if (schedulerLockService.hasInterruptedRun(WEEKLY_RESET_JOB, runKey)) {
+            log.warn("Weekly campaign rotation reset of epoch week {} was interrupted, resuming", runKey);
+            runExclusively();
+        }
+    }
+    
+    /**
+     * Run the reset under the weekly reset lock
+     * 
+     * @return False if another instance holds the lock
+     */
+    private boolean runExclusively() {
+        Lease lease = schedulerLockService.tryAcquire(WEEKLY_RESET_JOB);
+        if (lease == null) {
+            return false;
+        }
+        
+        try {
+            resetAndRotate(lease);
+        } catch (LeaseLostException e) {
+            log.warn("Lost the weekly reset lock, the next holder resumes from the last checkpoint", e);
+        } finally {
+            lease.release();
+        }
+        return true;
+    }
+    
+    /**
+     * Reset the weekly frequencies and rotate the campaigns of the current week
+     * 
+     * Works in chunks of campaigns read by keyset paging, with one bulk UPDATE
+     * and one commit per chunk, so no lock is held for longer than a chunk.
+     * Each chunk commits together with its checkpoint, the last campaign id
+     * reset, so an interrupted run resumes after the last committed chunk.
+     */
+    private void resetAndRotate(Lease lease) {
+        StopWatch stopWatch = new StopWatch("weeklyRotationReset");
+        
         Date currentDate = new Date();
         Date weekStartDate = rotationUtils.getWeekStartDate(currentDate);
         Date weekEndDate = rotationUtils.getWeekEndDate(currentDate);
+        String runKey = runKey(weekStartDate);
         
-        // Get all campaigns active during this week
-        List<CampaignMapping> activeCampaigns = campaignRepository.findCampaignsActiveInWeek(
-                weekStartDate, weekEndDate);
-        
-        log.info("Found {} active campaigns for the current week", activeCampaigns.size());
-        
-        if (activeCampaigns.isEmpty()) {
+        if (lease.isCompleted(runKey)) {
+            log.info("Weekly campaign rotation reset of epoch week {} already completed", runKey);
+            loadRotationPlans();
             return;
         }
         
-        // Reset weekly frequency counters for all campaigns
-        resetWeeklyFrequenciesForCampaigns(activeCampaigns);
+        String resumeAfter = lease.getCheckpoint(runKey);
+        if (resumeAfter != null) {
+            log.info("Resuming weekly campaign rotation reset of epoch week {} after campaign '{}'", 
+                    runKey, resumeAfter);
+        } else {
+            transactionTemplate.execute(status -> {
+                lease.checkpoint(runKey, "");
+                return null;
+            });
+        }
         
-        // Group campaigns by company to handle rotation separately for each company
-        Map<String, List<CampaignMapping>> campaignsByCompany = groupCampaignsByCompany(activeCampaigns);
+        // Reset weekly frequency counters of all campaigns active during this week
+        stopWatch.start("resetFrequencies");
+        int[] resetCount = new int[1];
+        List<CampaignMapping> activeCampaigns = readActiveCampaigns(weekStartDate, weekEndDate, chunk -> {
+            List<CampaignMapping> pending = after(chunk, resumeAfter);
+            if (pending.isEmpty()) {
+                return;
+            }
+            String lastId = chunk.get(chunk.size() - 1).getId();
+            resetCount[0] += transactionTemplate.execute(status -> {
+                int reset = resetWeeklyFrequencies(pending, weekStartDate);
+                lease.checkpoint(runKey, lastId);
+                return reset;
+            });
+        });
+        stopWatch.stop();
         
-        // Apply rotation logic for each company
-        for (Map.Entry<String, List<CampaignMapping>> entry : campaignsByCompany.entrySet()) {
-            String company = entry.getKey();
-            List<CampaignMapping> companyCampaigns = entry.getValue();
-            
-            log.info("Processing rotation for company: {} with {} campaigns", company, companyCampaigns.size());
+        log.info("Reset weekly frequency for {} of {} active campaigns", resetCount[0], activeCampaigns.size());
+        
+        if (!activeCampaigns.isEmpty()) {
+            // Build and persist the rotation plan of each company, then publish them all
+            stopWatch.start("rotateCompanies");
+            Map<String, RotationPlan> plans = rotateCompanies(groupCampaignsByCompany(activeCampaigns), 
+                    weekStartDate, lease);
+            stopWatch.stop();
             
-            // Apply rotation logic - update priority/order based on week number
-            applyCampaignRotation(companyCampaigns, weekStartDate);
+            rotationPlans.set(Collections.unmodifiableMap(plans));
+            log.info("Published rotation plans for {} companies", plans.size());
+        }
+        
+        transactionTemplate.execute(status -> {
+            lease.complete(runKey);
+            return null;
+        });
+        
+        for (StopWatch.TaskInfo phase : stopWatch.getTaskInfo()) {
+            log.info("Weekly reset phase {} took {} ms", phase.getTaskName(), phase.getTimeMillis());
+        }
+        log.info("Weekly campaign rotation reset completed in {} ms", stopWatch.getTotalTimeMillis());
+    }
+    
+    /**
+     * Campaigns of a chunk with an id after a checkpoint, all of them if there is none
+     * Resets only apply to campaigns not yet reset this week, so replaying a campaign is harmless
+     */
+    private static List<CampaignMapping> after(List<CampaignMapping> chunk, String checkpoint) {
+        if (checkpoint == null || checkpoint.isEmpty()) {
+            return chunk;
         }
         
-        log.info("Weekly campaign rotation reset completed");
+        List<CampaignMapping> pending = new ArrayList<>(chunk.size());
+        for (CampaignMapping campaign : chunk) {
+            if (campaign.getId().compareTo(checkpoint) > 0) {
+                pending.add(campaign);
+            }
+        }
+        return pending;
+    }
+    
+    private String runKey(Date weekStartDate) {
+        return String.valueOf(rotationUtils.getEpochWeek(weekStartDate));
     }
     
     /**
-     * Reset weekly frequency counters for all campaigns
-     * Restores original frequency per week values
+     * Read all campaigns active during a week, one keyset-paged chunk at a time
+     * 
+     * @param perChunk Called with every chunk as soon as it is read
+     * @return All active campaigns
      */
-    private void resetWeeklyFrequenciesForCampaigns(List<CampaignMapping> campaigns) {
-        List<String> campaignIds = new ArrayList<>();
+    private List<CampaignMapping> readActiveCampaigns(Date weekStartDate, Date weekEndDate,
+            Consumer<List<CampaignMapping>> perChunk) {
+        List<CampaignMapping> activeCampaigns = new ArrayList<>();
+        String afterId = "";
         
-        for (CampaignMapping campaign : campaigns) {
-            // Only reset if needed
-            if (campaign.getOrginalFrequencyPerWeek() != null && 
-                !campaign.getFrequencyPerWeek().equals(campaign.getOrginalFrequencyPerWeek())) {
-                
-                campaign.setFrequencyPerWeek(campaign.getOrginalFrequencyPerWeek());
-                campaign.setRotation_status(null); // Clear rotation status
-                campaignIds.add(campaign.getId());
+        while (true) {
+            List<CampaignMapping> chunk = campaignRepository.findCampaignsActiveInWeekAfter(
+                    weekStartDate, weekEndDate, afterId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            
+            perChunk.accept(chunk);
+            activeCampaigns.addAll(chunk);
+            log.debug("Processed chunk of {} active campaigns, {} so far", chunk.size(), activeCampaigns.size());
+            
+            if (chunk.size() < chunkSize) {
+                break;
             }
+            afterId = chunk.get(chunk.size() - 1).getId();
         }
         
-        if (!campaignIds.isEmpty()) {
-            campaignRepository.resetWeeklyFrequency(campaignIds);
-            log.info("Reset weekly frequency for {} campaigns", campaignIds.size());
+        return activeCampaigns;
+    }
+    
+    /**
+     * Reset weekly frequency counters for a chunk of campaigns in one statement
+     * Restores original frequency per week values, except for campaigns
+     * already leased from in the new week
+     * 
+     * @return Number of campaigns reset
+     */
+    private int resetWeeklyFrequencies(List<CampaignMapping> campaigns, Date weekStartDate) {
+        List<String> campaignIds = new ArrayList<>(campaigns.size());
+        for (CampaignMapping campaign : campaigns) {
+            campaignIds.add(campaign.getId());
         }
+        return campaignRepository.resetWeeklyFrequencyBefore(campaignIds, rotationUtils.getEpochWeek(weekStartDate));
     }
     
     /**
@@ -110,72 +293,206 @@ public class CampaignRotationManager {
         Map<String, List<CampaignMapping>> campaignsByCompany = new HashMap<>();
         
         for (CampaignMapping campaign : campaigns) {
-            // A campaign can be eligible for multiple companies (pipe-separated)
-            String[] companies = campaign.getCompanyNames().split("\\|");
+            // A campaign can be eligible for multiple companies, taken from the company index
+            List<String> companies = campaignCompanyIndex.getCompanies(campaign.getId(), campaign.getCompanyNames());
             
             for (String company : companies) {
-                company = company.trim();
+                campaignsByCompany.computeIfAbsent(company, key -> new ArrayList<>()).add(campaign);
+            }
+        }
+        
+        return campaignsByCompany;
+    }
+    
+    /**
+     * Build the rotation plan of one company for a week
+     * Campaigns are numbered oldest first and rotate by one position every week
+     */
+    private RotationPlan buildRotationPlan(List<CampaignMapping> campaigns, Date weekStartDate) {
+        List<CampaignMapping> byCreation = new ArrayList<>(campaigns);
+        byCreation.sort((c1, c2) -> c1.getCreatedDate().compareTo(c2.getCreatedDate()));
+        
+        // Get week key for determining rotation order
+        int weekNumber = rotationUtils.getCompactWeekKey(weekStartDate) % 100;
+        
+        int size = byCreation.size();
+        String[] campaignIds = new String[size];
+        int[] order = new int[size];
+        
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            campaignIds[ordinal] = byCreation.get(ordinal).getId();
+            
+            // Position after rotation; this ensures fair rotation over time
+            int position = rotationUtils.getCampaignPriorityForWeek(ordinal, weekNumber + 1, size);
+            order[position] = ordinal;
+        }
+        
+        return new RotationPlan(weekStartDate.getTime(), campaignIds, order);
+    }
+    
+    /**
+     * Build the rotation plans of all companies from the active campaigns
+     */
+    private Map<String, RotationPlan> buildRotationPlans(List<CampaignMapping> activeCampaigns, Date weekStartDate) {
+        Map<String, RotationPlan> plans = new HashMap<>();
+        
+        for (Map.Entry<String, List<CampaignMapping>> entry : groupCampaignsByCompany(activeCampaigns).entrySet()) {
+            log.debug("Building rotation plan for company: {} with {} campaigns", 
+                    entry.getKey(), entry.getValue().size());
+            plans.put(planKey(entry.getKey()), buildRotationPlan(entry.getValue(), weekStartDate));
+        }
+        
+        return plans;
+    }
+    
+    /**
+     * Build and persist the rotation plan of every company
+     * Companies are independent: each one is persisted in its own transaction,
+     * on up to campaign.rotation.reset.parallelism threads, and a company that
+     * fails keeps its previous plan without affecting the others
+     * 
+     * @return Plans by normalized company
+     */
+    private Map<String, RotationPlan> rotateCompanies(Map<String, List<CampaignMapping>> campaignsByCompany,
+            Date weekStartDate, Lease lease) {
+        Map<String, RotationPlan> previousPlans = rotationPlans.get();
+        Map<String, RotationPlan> plans = new ConcurrentHashMap<>();
+        AtomicInteger failures = new AtomicInteger();
+        
+        int threads = Math.min(parallelism, campaignsByCompany.size());
+        if (threads <= 1) {
+            campaignsByCompany.forEach((company, campaigns) -> 
+                    rotateCompany(company, campaigns, weekStartDate, lease, previousPlans, plans, failures));
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, rotationThreadFactory());
+            try {
+                List<Future<?>> tasks = new ArrayList<>(campaignsByCompany.size());
+                campaignsByCompany.forEach((company, campaigns) -> tasks.add(executor.submit(() -> 
+                        rotateCompany(company, campaigns, weekStartDate, lease, previousPlans, plans, failures))));
                 
-                if (!campaignsByCompany.containsKey(company)) {
-                    campaignsByCompany.put(company, new ArrayList<>());
+                for (Future<?> task : tasks) {
+                    task.get();
                 }
-                
-                campaignsByCompany.get(company).add(campaign);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while rotating companies, publishing the plans built so far");
+            } catch (ExecutionException e) {
+                // rotateCompany handles its own failures, so this is unexpected
+                log.error("Unexpected failure while rotating companies", e.getCause());
+            } finally {
+                executor.shutdownNow();
             }
         }
         
-        return campaignsByCompany;
+        log.info("Rotated {} companies on {} threads, {} failed", 
+                campaignsByCompany.size(), Math.max(threads, 1), failures.get());
+        return plans;
     }
     
     /**
-     * Apply rotation logic for a set of campaigns
-     * Updates rotation_status to control which campaign shows first
+     * Build the rotation plan of one company and persist it in its own transaction
      */
-    private void applyCampaignRotation(List<CampaignMapping> campaigns, Date weekStartDate) {
-        if (campaigns.size() <= 1) {
+    private void rotateCompany(String company, List<CampaignMapping> campaigns, Date weekStartDate, Lease lease,
+            Map<String, RotationPlan> previousPlans, Map<String, RotationPlan> plans, AtomicInteger failures) {
+        String key = planKey(company);
+        RotationPlan plan = null;
+        
+        try {
+            log.debug("Processing rotation for company: {} with {} campaigns", company, campaigns.size());
+            plan = buildRotationPlan(campaigns, weekStartDate);
+            persistRotationPlan(plan, lease);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.error("Rotation failed for company: {}", company, e);
+        }
+        
+        // A plan that could not be persisted is still correct for this instance
+        RotationPlan published = plan != null ? plan : previousPlans.get(key);
+        if (published != null) {
+            plans.put(key, published);
+        }
+    }
+    
+    /**
+     * Write the rotation positions of one plan with a single JDBC batch
+     * The legacy rotation_status string is still written for existing readers
+     * 
+     * The lease is verified without locking its row, so companies still persist
+     * in parallel; a plan written just after losing the lease is the same plan
+     * the next holder writes
+     */
+    private void persistRotationPlan(RotationPlan plan, Lease lease) {
+        if (plan.size() <= 1) {
             // No rotation needed for 0 or 1 campaign
             return;
         }
         
-        // Sort campaigns by creation date (oldest first)
-        campaigns.sort((c1, c2) -> c1.getCreatedDate().compareTo(c2.getCreatedDate()));
-        
-        // Get week key for determining rotation order
-        String weekKey = rotationUtils.getWeekKey(weekStartDate);
-        int weekNumber = Integer.parseInt(weekKey.split("-")[1]);
+        List<Object[]> batch = new ArrayList<>(plan.size());
+        for (int position = 0; position < plan.size(); position++) {
+            batch.add(new Object[] {
+                    position,
+                    // The first campaign in rotation order is shown first
+                    position == 0 ? null : ROTATION_POSITION + position,
+                    plan.campaignAt(position) });
+        }
         
-        // Calculate rotation based on week number
-        // This ensures fair rotation over time
-        int rotationOffset = weekNumber % campaigns.size();
+        // Lock rows in id order so companies sharing campaigns cannot deadlock
+        batch.sort((row1, row2) -> ((String) row1[2]).compareTo((String) row2[2]));
         
-        // Apply rotation by setting rotation status
-        for (int i = 0; i < campaigns.size(); i++) {
-            CampaignMapping campaign = campaigns.get(i);
-            
-            // Calculate position after rotation
-            int rotatedPosition = (i + rotationOffset) % campaigns.size();
-            
-            // If it's the first campaign in rotation order, mark it so it will be shown first
-            if (rotatedPosition == 0) {
-                campaign.setRotation_status(null); // Will be shown first
-            } else {
-                // Set rotation status indicating relative position
-                campaign.setRotation_status("ROTATION_POSITION_" + rotatedPosition);
-            }
-            
-            campaignRepository.save(campaign);
+        transactionTemplate.execute(status -> {
+            lease.verify();
+            return jdbcTemplate.batchUpdate(UPDATE_ROTATION_POSITION, batch, 
+                    new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR });
+        });
+    }
+    
+    private static ThreadFactory rotationThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "campaign-rotation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Move rows still described only by rotation_status to the typed columns
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateRotationStatus() {
+        int migrated = campaignRepository.migrateRotationStatus();
+        if (migrated > 0) {
+            log.info("Migrated rotation status of {} campaigns to typed columns", migrated);
         }
     }
     
+    /**
+     * Build this week's plans when the application starts
+     * Plans are deterministic, so every instance builds the same ones
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRotationPlans() {
+        Date currentDate = new Date();
+        Date weekStartDate = rotationUtils.getWeekStartDate(currentDate);
+        Date weekEndDate = rotationUtils.getWeekEndDate(currentDate);
+        
+        List<CampaignMapping> activeCampaigns = readActiveCampaigns(weekStartDate, weekEndDate, chunk -> { });
+        rotationPlans.set(Collections.unmodifiableMap(buildRotationPlans(activeCampaigns, weekStartDate)));
+        
+        log.info("Loaded rotation plans for {} companies", rotationPlans.get().size());
+    }
+    
     /**
      * Get the next campaign in rotation for a company
      * Used by the rotation service to implement "rotate equally" requirement
      * 
+     * @param company Company identifier
      * @param eligibleCampaigns List of all eligible campaigns
      * @param currentDate Current date
      * @return Selected campaign based on rotation rules
      */
-    public CampaignMapping getNextCampaignInRotation(List<CampaignMapping> eligibleCampaigns, Date currentDate) {
+    public CampaignMapping getNextCampaignInRotation(String company, List<CampaignMapping> eligibleCampaigns, 
+            Date currentDate) {
         if (eligibleCampaigns.isEmpty()) {
             return null;
         }
@@ -184,44 +501,66 @@ public class CampaignRotationManager {
             return eligibleCampaigns.get(0);
         }
         
-        // Find campaigns with no rotation status first (highest priority)
-        List<CampaignMapping> highestPriorityCampaigns = eligibleCampaigns.stream()
-                .filter(c -> c.getRotation_status() == null)
-                .collect(Collectors.toList());
+        RotationPlan plan = rotationPlans.get().get(planKey(company));
+        CampaignMapping selected = plan != null ? plan.firstOf(eligibleCampaigns) : null;
         
-        if (!highestPriorityCampaigns.isEmpty()) {
-            // If there are multiple campaigns with highest priority, use creation date as tiebreaker
-            highestPriorityCampaigns.sort((c1, c2) -> c1.getCreatedDate().compareTo(c2.getCreatedDate()));
-            return highestPriorityCampaigns.get(0);
+        return selected != null ? selected : lowestRotationPosition(eligibleCampaigns);
+    }
+    
+    /**
+     * Put the eligible campaigns of a company in rotation order
+     * Follows the company's published plan, or the persisted rotation
+     * positions when no plan covers the company
+     * 
+     * @param company Company identifier
+     * @param eligibleCampaigns List of all eligible campaigns
+     * @return Eligible campaigns, the one to show first at the head
+     */
+    public List<CampaignMapping> getCampaignsInRotationOrder(String company, List<CampaignMapping> eligibleCampaigns) {
+        if (eligibleCampaigns.size() <= 1) {
+            return eligibleCampaigns;
         }
         
-        // If all campaigns have rotation status, sort by position
-        eligibleCampaigns.sort((c1, c2) -> {
-            if (c1.getRotation_status() == null) return -1;
-            if (c2.getRotation_status() == null) return 1;
-            
-            // Extract position number from status
-            int pos1 = extractPositionFromStatus(c1.getRotation_status());
-            int pos2 = extractPositionFromStatus(c2.getRotation_status());
-            
-            return Integer.compare(pos1, pos2);
-        });
+        RotationPlan plan = rotationPlans.get().get(planKey(company));
+        if (plan != null) {
+            return plan.inOrder(eligibleCampaigns);
+        }
         
-        return eligibleCampaigns.get(0);
+        List<CampaignMapping> ordered = new ArrayList<>(eligibleCampaigns);
+        ordered.sort(Comparator.comparingInt(campaign -> 
+                campaign.getRotationPosition() != null ? campaign.getRotationPosition() : -1));
+        return ordered;
     }
     
     /**
-     * Extract position number from rotation status
+     * Pick the campaign with the lowest persisted rotation position
+     * Used when no plan covers the company; campaigns without a position come first
      */
-    private int extractPositionFromStatus(String rotationStatus) {
-        if (rotationStatus == null || !rotationStatus.startsWith("ROTATION_POSITION_")) {
-            return Integer.MAX_VALUE;
-        }
+    private CampaignMapping lowestRotationPosition(List<CampaignMapping> campaigns) {
+        CampaignMapping lowest = null;
+        int lowestPosition = Integer.MAX_VALUE;
         
-        try {
-            return Integer.parseInt(rotationStatus.substring("ROTATION_POSITION_".length()));
-        } catch (NumberFormatException e) {
-            return Integer.MAX_VALUE;
+        for (CampaignMapping campaign : campaigns) {
+            int position = campaign.getRotationPosition() != null ? campaign.getRotationPosition() : -1;
+            if (lowest == null || position < lowestPosition) {
+                lowest = campaign;
+                lowestPosition = position;
+            }
         }
+        return lowest;
+    }
+    
+    /**
+     * Get the rotation plan currently published for a company
+     * 
+     * @param company Company identifier
+     * @return Rotation plan, or null if the company has no active campaigns
+     */
+    public RotationPlan getRotationPlan(String company) {
+        return rotationPlans.get().get(planKey(company));
+    }
+    
+    private static String planKey(String company) {
+        return company.trim().toUpperCase(Locale.ROOT);
     }
-}
\ No newline at end of file
+}
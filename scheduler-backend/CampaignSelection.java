@@ -0,0 +1,45 @@
+package com.usbank.corp.dcr.api.model;
+
+import lombok.Getter;
+
+/**
+ * Result of selecting the next campaign for one user
+ *
+ * A campaign payload is only present when the outcome is SERVED. The
+ * other outcomes are normal business results, not errors, and carry a
+ * message explaining why nothing was served.
+ */
+@Getter
+public final class CampaignSelection {
+
+    private final SelectionOutcome outcome;
+
+    private final CampaignPayload payload;
+
+    private final String message;
+
+    private CampaignSelection(SelectionOutcome outcome, CampaignPayload payload, String message) {
+        this.outcome = outcome;
+        this.payload = payload;
+        this.message = message;
+    }
+
+    public static CampaignSelection served(CampaignPayload payload) {
+        return new CampaignSelection(SelectionOutcome.SERVED, payload, null);
+    }
+
+    public static CampaignSelection notServed(SelectionOutcome outcome, String message) {
+        return new CampaignSelection(outcome, null, message);
+    }
+
+    /**
+     * The served campaign, shared and not to be modified; null unless served
+     */
+    public CampaignResponseDTO getCampaign() {
+        return payload != null ? payload.getCampaign() : null;
+    }
+
+    public boolean isServed() {
+        return outcome == SelectionOutcome.SERVED;
+    }
+}
@@ -0,0 +1,259 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.entity.UserCampaignViewCount;
+import com.usbank.corp.dcr.api.repository.UserCampaignViewCountRepository;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.LeaseLostException;
+
+/**
+ * Per-user, per-campaign view counts used for display capping
+ * Counters are incremented by the history writer in the same batch as the
+ * history rows, so reads never need to aggregate user_campaign_history
+ *
+ * Counters are backfilled from history once per database, before the web
+ * server accepts requests. The backfill sets each counter to the number of
+ * views in user_campaign_history and its compacted summaries, user by user,
+ * so a view recorded meanwhile (e.g. by another instance) is counted
+ * exactly once whichever side gets there first. Its progress and completion
+ * are kept with the view-count-backfill scheduler lock.
+ */
+@Service
+public class CampaignViewCounter implements SmartInitializingSingleton {
+    
+    private static final Logger log = LoggerFactory.getLogger(CampaignViewCounter.class);
+    
+    // Keeps IN lists well below the SQL Server parameter limit
+    private static final int QUERY_CHUNK_SIZE = 1000;
+    
+    static final String BACKFILL_JOB = "view-count-backfill";
+    
+    // Change to backfill once more, e.g. after fixing how counters are derived
+    private static final String BACKFILL_RUN = "history-v1";
+    
+    private static final String BACKFILL_CHUNK_END = "SELECT MAX(user_id) FROM (SELECT TOP (?) user_id FROM ("
+            + "SELECT user_id FROM [dbo].[user_campaign_history] WHERE user_id > ? "
+            + "UNION SELECT user_id FROM [dbo].[user_campaign_history_summary] WHERE user_id > ?"
+            + ") users ORDER BY user_id) chunk";
+    
+    private static final String BACKFILL_CHUNK = "MERGE [dbo].[user_campaign_view_count] WITH (HOLDLOCK) AS t "
+            + "USING (SELECT h.user_id, h.campaign_id, SUM(h.view_count) AS view_count, "
+            + "    MAX(h.view_date) AS view_date FROM ("
+            + "    SELECT user_id, campaign_id, 1 AS view_count, view_date "
+            + "    FROM [dbo].[user_campaign_history] WHERE user_id > ? AND user_id <= ? "
+            + "    UNION ALL "
+            + "    SELECT user_id, campaign_id, view_count, last_view_date "
+            + "    FROM [dbo].[user_campaign_history_summary] WHERE user_id > ? AND user_id <= ?"
+            + ") h GROUP BY h.user_id, h.campaign_id) AS s "
+            + "ON t.user_id = s.user_id AND t.campaign_id = s.campaign_id "
+            + "WHEN MATCHED THEN UPDATE SET view_count = s.view_count, last_view_date = s.view_date "
+            + "WHEN NOT MATCHED THEN INSERT (user_id, campaign_id, view_count, last_view_date) "
+            + "VALUES (s.user_id, s.campaign_id, s.view_count, s.view_date);";
+    
+    private final UserCampaignViewCountRepository viewCountRepository;
+    private final UserCampaignHistoryWriter historyWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SchedulerLockService schedulerLockService;
+    
+    @Value("${campaign.view-count.backfill.chunk-size:2000}")
+    private int backfillChunkSize;
+    
+    @Autowired
+    public CampaignViewCounter(UserCampaignViewCountRepository viewCountRepository,
+                               UserCampaignHistoryWriter historyWriter,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               SchedulerLockService schedulerLockService) {
+        this.viewCountRepository = viewCountRepository;
+        this.historyWriter = historyWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.schedulerLockService = schedulerLockService;
+    }
+    
+    /**
+     * Get how many times a user has seen each campaign
+     * Includes views still waiting in the history writer
+     * 
+     * @param userId User identifier
+     * @return Map of campaign id to view count, campaigns never seen are absent
+     */
+    public Map<String, Long> getViewCounts(String userId) {
+        // Pending views are taken before the read, see withPendingViews
+        Map<String, Long> pendingCounts = historyWriter.pendingViewCounts(userId);
+        SelectionMetrics.countDatabaseCall();
+        List<UserCampaignViewCount> counters = viewCountRepository.findByUserId(userId);
+        
+        Map<String, Long> viewCounts = new HashMap<>(counters.size() * 2);
+        for (UserCampaignViewCount counter : counters) {
+            viewCounts.put(counter.getCampaignId(), counter.getViewCount());
+        }
+        addPendingViews(pendingCounts, viewCounts);
+        return viewCounts;
+    }
+    
+    /**
+     * Add the views that were waiting in the history writer to counts read from the table
+     * The pending counts must be taken from the writer before the table is read:
+     * a batch committing in between is then counted twice, capping the user a
+     * little early, instead of being missed and serving past the capping
+     * 
+     * @param storedCounts Map of campaign id to stored view count, not modified
+     * @param pendingCounts Map of campaign id to pending view count, taken before the read
+     * @return Map of campaign id to view count
+     */
+    public Map<String, Long> withPendingViews(Map<String, Long> storedCounts, Map<String, Long> pendingCounts) {
+        Map<String, Long> viewCounts = new HashMap<>(storedCounts);
+        addPendingViews(pendingCounts, viewCounts);
+        return viewCounts;
+    }
+    
+    /**
+     * Get how many times each of many users has seen each campaign
+     * Includes views still waiting in the history writer
+     * 
+     * @param userIds User identifiers
+     * @return Map of user id to campaign view counts, users without views are absent
+     */
+    public Map<String, Map<String, Long>> getViewCounts(List<String> userIds) {
+        // Pending views are taken before the reads, see withPendingViews
+        Map<String, Map<String, Long>> pendingCounts = new HashMap<>(userIds.size() * 2);
+        for (String userId : userIds) {
+            Map<String, Long> pending = historyWriter.pendingViewCounts(userId);
+            if (!pending.isEmpty()) {
+                pendingCounts.put(userId, pending);
+            }
+        }
+        
+        Map<String, Map<String, Long>> viewCounts = new HashMap<>(userIds.size() * 2);
+        
+        for (int from = 0; from < userIds.size(); from += QUERY_CHUNK_SIZE) {
+            List<String> chunk = userIds.subList(from, Math.min(from + QUERY_CHUNK_SIZE, userIds.size()));
+            SelectionMetrics.countDatabaseCall();
+            for (UserCampaignViewCount counter : viewCountRepository.findByUserIdIn(chunk)) {
+                viewCounts.computeIfAbsent(counter.getUserId(), id -> new HashMap<>())
+                        .put(counter.getCampaignId(), counter.getViewCount());
+            }
+        }
+        
+        pendingCounts.forEach((userId, pending) -> 
+                addPendingViews(pending, viewCounts.computeIfAbsent(userId, id -> new HashMap<>())));
+        return viewCounts;
+    }
+    
+    private static void addPendingViews(Map<String, Long> pendingCounts, Map<String, Long> viewCounts) {
+        pendingCounts.forEach((campaignId, pending) -> viewCounts.merge(campaignId, pending, Long::sum));
+    }
+    
+    /**
+     * Backfill before the web server starts accepting requests
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        backfillOnce();
+    }
+    
+    /**
+     * Pick up a backfill whose instance died before completing it
+     */
+    @Scheduled(fixedDelayString = "${campaign.view-count.backfill.resume-check-interval-ms:600000}",
+               initialDelayString = "${campaign.view-count.backfill.resume-check-interval-ms:600000}")
+    public void resumeInterruptedBackfill() {
+        if (schedulerLockService.hasInterruptedRun(BACKFILL_JOB, BACKFILL_RUN)) {
+            log.warn("Campaign view counter backfill was interrupted, resuming");
+            backfillOnce();
+        }
+    }
+    
+    /**
+     * Backfill the counters from history unless that was done before
+     * Skipped if another instance is running it
+     */
+    public void backfillOnce() {
+        Lease lease = schedulerLockService.tryAcquire(BACKFILL_JOB);
+        if (lease == null) {
+            log.info("Campaign view counter backfill is running on another instance, skipping");
+            return;
+        }
+        
+        try {
+            if (lease.isCompleted(BACKFILL_RUN)) {
+                return;
+            }
+            
+            String resumeAfter = lease.getCheckpoint(BACKFILL_RUN);
+            if (resumeAfter != null) {
+                log.info("Resuming campaign view counter backfill after user '{}'", resumeAfter);
+            }
+            
+            long start = System.currentTimeMillis();
+            long merged = backfill(resumeAfter != null ? resumeAfter : "", lease);
+            transactionTemplate.execute(status -> {
+                lease.complete(BACKFILL_RUN);
+                return null;
+            });
+            log.info("Backfilled {} campaign view counters from history in {} ms", 
+                    merged, System.currentTimeMillis() - start);
+        } catch (LeaseLostException e) {
+            log.warn("Lost the view counter backfill lock, the next holder resumes from the last checkpoint", e);
+        } catch (RuntimeException e) {
+            log.error("Campaign view counter backfill failed, it resumes from the last checkpoint", e);
+        } finally {
+            lease.release();
+        }
+    }
+    
+    /**
+     * Set every counter to the views found in history, whether or not a
+     * backfill ran before. For seeding tools that write history directly
+     * 
+     * @return Number of counters written
+     */
+    public long backfillAll() {
+        return backfill("", null);
+    }
+    
+    /**
+     * Merge the history counts of all users after a given one, one chunk of users per transaction
+     * 
+     * @param lease Lease to checkpoint each chunk with, null to run unfenced
+     * @return Number of counters written
+     */
+    private long backfill(String afterUserId, Lease lease) {
+        long merged = 0;
+        String after = afterUserId;
+        
+        while (true) {
+            String chunkEnd = jdbcTemplate.queryForObject(BACKFILL_CHUNK_END, String.class, 
+                    backfillChunkSize, after, after);
+            if (chunkEnd == null) {
+                return merged;
+            }
+            
+            String from = after;
+            merged += transactionTemplate.execute(status -> {
+                int rows = jdbcTemplate.update(BACKFILL_CHUNK, from, chunkEnd, from, chunkEnd);
+                if (lease != null) {
+                    lease.checkpoint(BACKFILL_RUN, chunkEnd);
+                }
+                return rows;
+            });
+            after = chunkEnd;
+        }
+    }
+}
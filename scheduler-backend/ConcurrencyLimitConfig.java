@@ -0,0 +1,43 @@
+package com.usbank.corp.dcr.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limit on the number of API requests handled at the same time
+ *
+ * On by default when requests run on virtual threads, and switched on or off
+ * for either thread model with campaign.web.concurrency.enabled. The limit
+ * is sized from the connection pool: maximum-pool-size times
+ * requests-per-connection, since most requests are answered from the caches
+ * without a connection. campaign.web.concurrency.max-requests overrides the
+ * derived limit.
+ */
+@Configuration
+@ConditionalOnExpression("${campaign.web.concurrency.enabled:${campaign.web.virtual-threads.enabled:false}}")
+@Slf4j
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize,
+            @Value("${campaign.web.concurrency.requests-per-connection:4}") int requestsPerConnection,
+            @Value("${campaign.web.concurrency.max-requests:0}") int maxRequests,
+            @Value("${campaign.web.concurrency.acquire-timeout-ms:200}") long acquireTimeoutMillis) {
+        
+        int limit = maxRequests > 0 ? maxRequests : connectionPoolSize * requestsPerConnection;
+        log.info("Limiting API requests to {} at a time", limit);
+        
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = 
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limit, acquireTimeoutMillis));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,255 @@
+package com.usbank.corp.dcr.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.event.CampaignChangedEvent;
+import com.usbank.corp.dcr.api.service.CampaignCompanyIndex;
+
+/**
+ * Cache of eligible campaigns per (company, request date)
+ *
+ * Each entry is an immutable snapshot of the campaigns returned by the
+ * eligibility query. Empty results are cached as well, so companies without
+ * campaigns do not hit the database either. A hit returns the snapshot's
+ * own unmodifiable list without copying it, so callers must not modify the
+ * campaigns in it; quota and rotation state live in CampaignQuotaCounters
+ * and the rotation plans instead.
+ *
+ * After a CampaignMapping change commits on this instance, the snapshots of
+ * the companies the campaign was and is assigned to are dropped. A change
+ * made through another instance is only picked up when the snapshot
+ * expires, so with several instances campaign.cache.eligible.ttl-seconds
+ * bounds how long an edited campaign can still be served as it was.
+ */
+@Component
+public class EligibleCampaignCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EligibleCampaignCache.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Access-ordered so that the least recently used entry is evicted first
+    private final Map<Key, Snapshot> snapshots;
+
+    // Bumped on every invalidation; loads that raced with one are not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public EligibleCampaignCache(@Value("${campaign.cache.eligible.max-entries:2000}") int maxEntries,
+                                 @Value("${campaign.cache.eligible.ttl-seconds:300}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.snapshots = new LinkedHashMap<Key, Snapshot>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Snapshot> eldest) {
+                return size() > EligibleCampaignCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get eligible campaigns for a company and date, loading them on a miss
+     *
+     * @param company Company identifier
+     * @param requestDate Request date in yyyy-MM-dd format
+     * @param loader Loads the campaigns from the database
+     * @return Campaigns, not to be modified
+     */
+    public List<CampaignMapping> get(String company, String requestDate, Supplier<List<CampaignMapping>> loader) {
+        List<CampaignMapping> cached = getIfPresent(company, requestDate);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadGeneration = getGeneration();
+        List<CampaignMapping> loaded = loader.get();
+        put(company, requestDate, loaded, loadGeneration);
+        return loaded;
+    }
+
+    /**
+     * Get eligible campaigns for a company and date without loading them
+     *
+     * @param company Company identifier
+     * @param requestDate Request date in yyyy-MM-dd format
+     * @return Shared unmodifiable snapshot, or null on a miss
+     */
+    public List<CampaignMapping> getIfPresent(String company, String requestDate) {
+        Snapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(new Key(company, requestDate));
+        }
+
+        if (snapshot != null && snapshot.expiresAt > System.currentTimeMillis()) {
+            hits.increment();
+            return snapshot.campaigns;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Generation to pass to put, read before starting a load
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Store campaigns loaded outside of get
+     * The snapshot is dropped if the cache was invalidated since the load started
+     *
+     * @param company Company identifier
+     * @param requestDate Request date in yyyy-MM-dd format
+     * @param loaded Campaigns returned by the eligibility query; copied, the caller keeps ownership
+     * @param loadGeneration Value of getGeneration before the load started
+     */
+    public void put(String company, String requestDate, List<CampaignMapping> loaded, long loadGeneration) {
+        Snapshot snapshot = new Snapshot(loaded, System.currentTimeMillis() + ttlMillis);
+        synchronized (snapshots) {
+            if (generation.get() == loadGeneration) {
+                snapshots.put(new Key(company, requestDate), snapshot);
+            }
+        }
+    }
+
+    /**
+     * Drop all cached snapshots
+     */
+    public void invalidateAll() {
+        synchronized (snapshots) {
+            generation.incrementAndGet();
+            snapshots.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Drop the snapshots of some companies, for every request date
+     *
+     * @param companies Company identifiers, compared case-insensitively like the eligibility query does
+     */
+    public void invalidateCompanies(Collection<String> companies) {
+        if (companies.isEmpty()) {
+            return;
+        }
+        synchronized (snapshots) {
+            generation.incrementAndGet();
+            Iterator<Key> keys = snapshots.keySet().iterator();
+            while (keys.hasNext()) {
+                String company = keys.next().company.trim();
+                for (String changed : companies) {
+                    if (company.equalsIgnoreCase(changed)) {
+                        keys.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (snapshots) {
+            return snapshots.size();
+        }
+    }
+
+    /**
+     * A campaign change can move the campaign between companies or date
+     * ranges, so the snapshots of every company it was or is assigned to are
+     * stale once the change is committed. If the previous companies are not
+     * known, every snapshot is.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCampaignChanged(CampaignChangedEvent event) {
+        if (event.getPreviousCompanyNames() == null) {
+            log.debug("Invalidating eligible campaign cache after change to campaign {}", event.getCampaignId());
+            invalidateAll();
+            return;
+        }
+
+        Set<String> companies = new HashSet<>(CampaignCompanyIndex.parseCompanies(event.getPreviousCompanyNames()));
+        companies.addAll(CampaignCompanyIndex.parseCompanies(event.getCompanyNames()));
+        log.debug("Invalidating eligible campaigns of {} after change to campaign {}", companies, 
+                event.getCampaignId());
+        invalidateCompanies(companies);
+    }
+
+    private static CampaignMapping copyOf(CampaignMapping campaign) {
+        CampaignMapping copy = new CampaignMapping();
+        BeanUtils.copyProperties(campaign, copy);
+        return copy;
+    }
+
+    private static final class Key {
+        private final String company;
+        private final String requestDate;
+
+        Key(String company, String requestDate) {
+            this.company = company;
+            this.requestDate = requestDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return company.equals(other.company) && requestDate.equals(other.requestDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(company, requestDate);
+        }
+    }
+
+    private static final class Snapshot {
+        private final List<CampaignMapping> campaigns;
+        private final long expiresAt;
+
+        Snapshot(List<CampaignMapping> source, long expiresAt) {
+            List<CampaignMapping> copies = new ArrayList<>(source.size());
+            for (CampaignMapping campaign : source) {
+                copies.add(copyOf(campaign));
+            }
+            this.campaigns = Collections.unmodifiableList(copies);
+            this.expiresAt = expiresAt;
+        }
+    }
+}
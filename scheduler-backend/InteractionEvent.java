@@ -0,0 +1,19 @@
+package com.usbank.corp.dcr.api.model;
+
+import lombok.Data;
+
+/**
+ * One buffered user interaction with a campaign
+ */
+@Data
+public class InteractionEvent {
+
+    /** Client-generated key; an event is applied at most once per key */
+    private String idempotencyKey;
+
+    private InteractionType type;
+
+    private String campaignId;
+
+    private String userId;
+}
@@ -0,0 +1,45 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Idempotency key of an applied interaction event
+ * Written with JDBC by InteractionEventService; mapped so the table is part
+ * of the schema, and purged after the retention period
+ */
+@Entity
+@Table(name = "interaction_event_key",
+       indexes = @Index(name = "ix_interaction_event_key_processed", columnList = "processed_date"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InteractionEventKey {
+    @Id
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+    
+    @Column(nullable = false, name = "event_type", length = 20)
+    private String eventType;
+    
+    @Column(nullable = false, name = "user_id")
+    private String userId;
+    
+    @Column(nullable = false, name = "campaign_id")
+    private String campaignId;
+    
+    @Column(nullable = false, name = "processed_date")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date processedDate;
+}
@@ -0,0 +1,27 @@
+package com.usbank.corp.dcr.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one event of a batched interaction request
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InteractionEventResult {
+
+    public enum Status {
+        APPLIED,        // Recorded on the user's history
+        DUPLICATE,      // Key was already processed, nothing changed
+        NOT_FOUND,      // No history row for the user and campaign, may be retried
+        INVALID         // Missing key, type, campaign or user
+    }
+
+    private String idempotencyKey;
+
+    private Status status;
+
+    private String message;
+}
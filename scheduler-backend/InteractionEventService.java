@@ -0,0 +1,304 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.cache.UserWeeklyStateCache;
+import com.usbank.corp.dcr.api.model.InteractionEvent;
+import com.usbank.corp.dcr.api.model.InteractionEventResult;
+import com.usbank.corp.dcr.api.model.InteractionEventResult.Status;
+import com.usbank.corp.dcr.api.model.InteractionType;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+
+/**
+ * Applies batches of learn-more and form-submit events
+ *
+ * A batch costs three JDBC batches in one transaction, however many events
+ * it holds: the idempotency keys are claimed, the history rows are updated
+ * and the keys of events without a history row are released again, so
+ * those can be retried once the row exists. A key therefore only commits
+ * together with its event. Rows still queued in the history writer are
+ * written first, waiting up to campaign.events.pending-wait-ms; an event
+ * whose row is still unwritten after that is reported NOT_FOUND without
+ * claiming its key, so the client can retry it.
+ *
+ * Keys are claimed with an insert guarded by UPDLOCK/HOLDLOCK, so two
+ * requests carrying the same key cannot both apply it. Keys are claimed and
+ * history rows updated in sorted order, so two batches sharing keys or rows
+ * lock them in the same order and cannot deadlock.
+ */
+@Service
+public class InteractionEventService {
+
+    private static final Logger log = LoggerFactory.getLogger(InteractionEventService.class);
+
+    private static final String CLAIM_KEY = "INSERT INTO [dbo].[interaction_event_key] "
+            + "(idempotency_key, event_type, user_id, campaign_id, processed_date) "
+            + "SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS ("
+            + "SELECT 1 FROM [dbo].[interaction_event_key] WITH (UPDLOCK, HOLDLOCK) WHERE idempotency_key = ?)";
+
+    private static final String RELEASE_KEY = "DELETE FROM [dbo].[interaction_event_key] WHERE idempotency_key = ?";
+
+    // Marks the user's most recent row for the campaign, as the single-event endpoints do
+    private static final String APPLY_EVENT = "UPDATE [dbo].[user_campaign_history] SET "
+            + "has_clicked_learn_more = CASE WHEN ? = 'LEARN_MORE' THEN 1 ELSE has_clicked_learn_more END, "
+            + "has_submitted_form = CASE WHEN ? = 'FORM_SUBMIT' THEN 1 ELSE has_submitted_form END "
+            + "WHERE id = (SELECT TOP 1 id FROM [dbo].[user_campaign_history] "
+            + "WHERE user_id = ? AND campaign_id = ? ORDER BY view_date DESC)";
+
+    private static final String PURGE_KEYS = "DELETE FROM [dbo].[interaction_event_key] WHERE processed_date < ?";
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    static final String KEY_PURGE_JOB = "interaction-event-key-purge";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserCampaignHistoryWriter historyWriter;
+    private final UserWeeklyStateCache userWeeklyStateCache;
+    private final SchedulerLockService schedulerLockService;
+    private final long keyRetentionMillis;
+    private final long pendingWaitNanos;
+
+    @Autowired
+    public InteractionEventService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                   UserCampaignHistoryWriter historyWriter,
+                                   UserWeeklyStateCache userWeeklyStateCache,
+                                   SchedulerLockService schedulerLockService,
+                                   @Value("${campaign.events.key-retention-days:7}") long keyRetentionDays,
+                                   @Value("${campaign.events.pending-wait-ms:2000}") long pendingWaitMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.historyWriter = historyWriter;
+        this.userWeeklyStateCache = userWeeklyStateCache;
+        this.schedulerLockService = schedulerLockService;
+        this.keyRetentionMillis = TimeUnit.DAYS.toMillis(keyRetentionDays);
+        this.pendingWaitNanos = TimeUnit.MILLISECONDS.toNanos(pendingWaitMillis);
+    }
+
+    /**
+     * Apply a batch of interaction events
+     *
+     * @param events Events in client order
+     * @return One result per event, in the same order
+     */
+    public List<InteractionEventResult> applyEvents(List<InteractionEvent> events) {
+        InteractionEventResult[] results = new InteractionEventResult[events.size()];
+        List<Integer> accepted = new ArrayList<>(events.size());
+        Set<String> keys = new HashSet<>();
+
+        for (int i = 0; i < events.size(); i++) {
+            InteractionEvent event = events.get(i);
+            String problem = validate(event);
+            if (problem != null) {
+                results[i] = new InteractionEventResult(event != null ? event.getIdempotencyKey() : null, 
+                        Status.INVALID, problem);
+            } else if (!keys.add(event.getIdempotencyKey())) {
+                results[i] = new InteractionEventResult(event.getIdempotencyKey(), Status.DUPLICATE, 
+                        "Key repeated in this request");
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        // Every row is updated in the table, in the transaction that claims its key
+        long waitDeadline = System.nanoTime() + pendingWaitNanos;
+        accepted.removeIf(i -> !awaitHistoryWritten(events.get(i), waitDeadline, results, i));
+
+        if (!accepted.isEmpty()) {
+            transactionTemplate.execute(status -> {
+                apply(events, accepted, results);
+                return null;
+            });
+
+            // Only once committed, so a rolled back batch leaves the cache untouched
+            for (int i : accepted) {
+                if (results[i].getStatus() == Status.APPLIED) {
+                    InteractionEvent event = events.get(i);
+                    if (event.getType() == InteractionType.LEARN_MORE) {
+                        userWeeklyStateCache.recordLearnMoreClick(event.getUserId(), event.getCampaignId());
+                    } else {
+                        userWeeklyStateCache.recordFormSubmission(event.getUserId(), event.getCampaignId());
+                    }
+                }
+            }
+        }
+
+        log.info("Applied batch of {} interaction events", events.size());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Drop idempotency keys past the retention period
+     * Runs on the instance holding the purge scheduler lock only
+     */
+    @Scheduled(cron = "${campaign.events.key-purge-cron:0 30 2 * * *}")
+    public void purgeExpiredKeys() {
+        Lease lease = schedulerLockService.tryAcquire(KEY_PURGE_JOB);
+        if (lease == null) {
+            log.info("Interaction event key purge is running on another instance, skipping");
+            return;
+        }
+        
+        try {
+            int purged = jdbcTemplate.update(PURGE_KEYS, new Timestamp(System.currentTimeMillis() - keyRetentionMillis));
+            log.info("Purged {} expired interaction event keys", purged);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * Wait for the history writer to write the event's queued rows
+     *
+     * @param deadline System.nanoTime() by which the whole batch stops waiting
+     * @return false if a row is still unwritten, with a NOT_FOUND result recorded for the event
+     */
+    private boolean awaitHistoryWritten(InteractionEvent event, long deadline, InteractionEventResult[] results,
+            int i) {
+        if (historyWriter.awaitWritten(event.getUserId(), event.getCampaignId(), deadline - System.nanoTime())) {
+            return true;
+        }
+        results[i] = new InteractionEventResult(event.getIdempotencyKey(), Status.NOT_FOUND,
+                "User history not written yet");
+        return false;
+    }
+
+    /**
+     * Claim the keys and update the history rows
+     */
+    private void apply(List<InteractionEvent> events, List<Integer> accepted, InteractionEventResult[] results) {
+        List<Integer> claimOrder = new ArrayList<>(accepted);
+        claimOrder.sort(Comparator.comparing(i -> events.get(i).getIdempotencyKey()));
+        
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int[] claimed = jdbcTemplate.batchUpdate(CLAIM_KEY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                InteractionEvent event = events.get(claimOrder.get(i));
+                ps.setString(1, event.getIdempotencyKey());
+                ps.setString(2, event.getType().name());
+                ps.setString(3, event.getUserId());
+                ps.setString(4, event.getCampaignId());
+                ps.setTimestamp(5, now);
+                ps.setString(6, event.getIdempotencyKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return claimOrder.size();
+            }
+        });
+
+        List<Integer> toUpdate = new ArrayList<>();
+        for (int k = 0; k < claimOrder.size(); k++) {
+            int i = claimOrder.get(k);
+            InteractionEvent event = events.get(i);
+            if (claimed[k] == 0) {
+                results[i] = new InteractionEventResult(event.getIdempotencyKey(), Status.DUPLICATE, 
+                        "Key already processed");
+            } else {
+                toUpdate.add(i);
+            }
+        }
+        updateHistory(events, toUpdate, results);
+    }
+
+    /**
+     * Update the history rows of claimed events, releasing the keys of events without a row
+     */
+    private void updateHistory(List<InteractionEvent> events, List<Integer> claimedEvents, 
+            InteractionEventResult[] results) {
+        if (claimedEvents.isEmpty()) {
+            return;
+        }
+        
+        // Rows are locked in user and campaign order, as keys are
+        List<Integer> toUpdate = new ArrayList<>(claimedEvents);
+        toUpdate.sort(Comparator.comparing((Integer i) -> events.get(i).getUserId())
+                .thenComparing(i -> events.get(i).getCampaignId()));
+
+        int[] updated = jdbcTemplate.batchUpdate(APPLY_EVENT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                InteractionEvent event = events.get(toUpdate.get(i));
+                ps.setString(1, event.getType().name());
+                ps.setString(2, event.getType().name());
+                ps.setString(3, event.getUserId());
+                ps.setString(4, event.getCampaignId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return toUpdate.size();
+            }
+        });
+
+        List<String> releasedKeys = new ArrayList<>();
+        for (int k = 0; k < toUpdate.size(); k++) {
+            int i = toUpdate.get(k);
+            String key = events.get(i).getIdempotencyKey();
+            // SUCCESS_NO_INFO counts as applied
+            if (updated[k] != 0) {
+                results[i] = new InteractionEventResult(key, Status.APPLIED, null);
+            } else {
+                results[i] = new InteractionEventResult(key, Status.NOT_FOUND, "User history not found");
+                releasedKeys.add(key);
+            }
+        }
+
+        if (!releasedKeys.isEmpty()) {
+            // Sorted like the claims
+            releasedKeys.sort(null);
+            jdbcTemplate.batchUpdate(RELEASE_KEY, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setString(1, releasedKeys.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return releasedKeys.size();
+                }
+            });
+        }
+    }
+
+    private static String validate(InteractionEvent event) {
+        if (event == null) {
+            return "Event is empty";
+        }
+        if (event.getIdempotencyKey() == null || event.getIdempotencyKey().isEmpty()) {
+            return "idempotencyKey is required";
+        }
+        if (event.getIdempotencyKey().length() > MAX_KEY_LENGTH) {
+            return "idempotencyKey must be at most " + MAX_KEY_LENGTH + " characters";
+        }
+        if (event.getType() == null) {
+            return "type is required";
+        }
+        if (event.getCampaignId() == null || event.getUserId() == null) {
+            return "campaignId and userId are required";
+        }
+        return null;
+    }
+}
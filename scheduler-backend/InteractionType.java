@@ -0,0 +1,9 @@
+package com.usbank.corp.dcr.api.model;
+
+/**
+ * Kinds of user interaction with a served campaign
+ */
+public enum InteractionType {
+    LEARN_MORE,
+    FORM_SUBMIT
+}
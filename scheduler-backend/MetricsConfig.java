@@ -0,0 +1,57 @@
+package com.usbank.corp.dcr.api.config;
+
+import java.time.Duration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+/**
+ * Meter filters for the campaign selection metrics
+ *
+ * Selection timers publish a bounded percentile histogram so p99 per stage
+ * can be computed and alerted on in Prometheus. The tag caps are a guard:
+ * the selection meters only use fixed tag values, anything beyond the caps
+ * is a bug and is dropped instead of creating new time series.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final String SELECTION_PREFIX = "campaign.selection";
+
+    @Bean
+    public MeterFilter selectionHistogramFilter() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() == Meter.Type.TIMER && id.getName().startsWith(SELECTION_PREFIX)) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                            .maximumExpectedValue((double) Duration.ofSeconds(5).toNanos())
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    @Bean
+    public MeterFilter selectionStageTagLimit() {
+        return MeterFilter.maximumAllowableTags(SELECTION_PREFIX + ".stage", "stage", 10, MeterFilter.deny());
+    }
+
+    @Bean
+    public MeterFilter selectionOutcomeTagLimit() {
+        return MeterFilter.maximumAllowableTags(SELECTION_PREFIX, "outcome", 10, MeterFilter.deny());
+    }
+
+    @Bean
+    public MeterFilter cacheTagLimit() {
+        return MeterFilter.maximumAllowableTags("cache.", "cache", 20, MeterFilter.deny());
+    }
+}
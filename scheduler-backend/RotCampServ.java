@@ -1,11 +1,18 @@
 package com.usbank.corp.dcr.api.service;
 
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -14,12 +21,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import com.usbank.corp.dcr.api.cache.CampaignPayloadCache;
+import com.usbank.corp.dcr.api.cache.EligibleCampaignCache;
+import com.usbank.corp.dcr.api.cache.UserWeeklyState;
+import com.usbank.corp.dcr.api.cache.UserWeeklyStateCache;
 import com.usbank.corp.dcr.api.entity.CampaignMapping;
 import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
 import com.usbank.corp.dcr.api.exception.DataHandlingException;
+import com.usbank.corp.dcr.api.model.CampaignPayload;
 import com.usbank.corp.dcr.api.model.CampaignResponseDTO;
+import com.usbank.corp.dcr.api.model.CampaignSelection;
+import com.usbank.corp.dcr.api.model.SelectionOutcome;
+import com.usbank.corp.dcr.api.model.UserCampaignResult;
 import com.usbank.corp.dcr.api.repository.CampaignRepository;
 import com.usbank.corp.dcr.api.repository.UserCampaignHistoryRepository;
+import com.usbank.corp.dcr.api.repository.UserSelectionRepository;
+import com.usbank.corp.dcr.api.repository.UserSelectionRepository.UserSelection;
+import com.usbank.corp.dcr.api.service.SelectionMetrics.Stage;
 import com.usbank.corp.dcr.api.utils.RotationUtils;
 
 @Service
@@ -27,96 +45,433 @@ public class RotationCampaignService {
     
     private static final Logger log = LoggerFactory.getLogger(RotationCampaignService.class);
     
+    // Keeps IN lists well below the SQL Server parameter limit
+    private static final int BULK_QUERY_CHUNK_SIZE = 1000;
+    
     private final CampaignRepository campaignRepository;
     private final UserCampaignHistoryRepository userCampaignHistoryRepository;
+    private final EligibleCampaignCache eligibleCampaignCache;
+    private final CampaignCompanyIndex campaignCompanyIndex;
+    private final UserWeeklyStateCache userWeeklyStateCache;
+    private final CampaignViewCounter campaignViewCounter;
+    private final CampaignQuotaCounters campaignQuotaCounters;
+    private final UserCampaignHistoryWriter historyWriter;
+    private final SelectionMetrics selectionMetrics;
+    private final UserSelectionRepository userSelectionRepository;
+    private final CampaignPayloadCache campaignPayloadCache;
+    private final WeeklyViewerFilter weeklyViewerFilter;
+    private final CampaignRotationManager campaignRotationManager;
     
     @Autowired
     RotationUtils rotationUtils;
     
     @Autowired
     public RotationCampaignService(CampaignRepository campaignRepository, 
-                                  UserCampaignHistoryRepository userCampaignHistoryRepository) {
+                                  UserCampaignHistoryRepository userCampaignHistoryRepository,
+                                  EligibleCampaignCache eligibleCampaignCache,
+                                  CampaignCompanyIndex campaignCompanyIndex,
+                                  UserWeeklyStateCache userWeeklyStateCache,
+                                  CampaignViewCounter campaignViewCounter,
+                                  CampaignQuotaCounters campaignQuotaCounters,
+                                  UserCampaignHistoryWriter historyWriter,
+                                  SelectionMetrics selectionMetrics,
+                                  UserSelectionRepository userSelectionRepository,
+                                  CampaignPayloadCache campaignPayloadCache,
+                                  WeeklyViewerFilter weeklyViewerFilter,
+                                  CampaignRotationManager campaignRotationManager) {
         this.campaignRepository = campaignRepository;
         this.userCampaignHistoryRepository = userCampaignHistoryRepository;
+        this.eligibleCampaignCache = eligibleCampaignCache;
+        this.campaignCompanyIndex = campaignCompanyIndex;
+        this.userWeeklyStateCache = userWeeklyStateCache;
+        this.campaignViewCounter = campaignViewCounter;
+        this.campaignQuotaCounters = campaignQuotaCounters;
+        this.historyWriter = historyWriter;
+        this.selectionMetrics = selectionMetrics;
+        this.userSelectionRepository = userSelectionRepository;
+        this.campaignPayloadCache = campaignPayloadCache;
+        this.weeklyViewerFilter = weeklyViewerFilter;
+        this.campaignRotationManager = campaignRotationManager;
     }
 
     /**
      * Get next eligible campaign for a user, respecting rotation rules
+     * Outcomes other than a served campaign are reported as exceptions, for
+     * clients that rely on the original behaviour
      * 
      * @param requestDate in format yyyyMMdd
      * @param company Company identifier
      * @param userId User identifier
-     * @return Next eligible campaign, or null if none available
-     * @throws DataHandlingException if there's an issue with data handling
+     * @return Next eligible campaign, shared with the payload cache and not to be modified
+     * @throws DataHandlingException with status 200 if no campaign is served to the user
      */
     public CampaignResponseDTO getNextEligibleCampaign(String requestDate, String company, String userId) 
             throws DataHandlingException {
         
-        String formattedDate = rotationUtils.convertDate(requestDate);
-        Date currentDate = rotationUtils.getinDate(formattedDate);
+        CampaignSelection selection = selectNextCampaign(requestDate, company, userId);
+        if (!selection.isServed()) {
+            throw new DataHandlingException(HttpStatus.OK.toString(), selection.getMessage());
+        }
+        return selection.getCampaign();
+    }
+    
+    /**
+     * Select the next eligible campaign for a user, respecting rotation rules
+     * 
+     * @param requestDate in format yyyyMMdd
+     * @param company Company identifier
+     * @param userId User identifier
+     * @return The served campaign, or the outcome explaining why none was served
+     */
+    public CampaignSelection selectNextCampaign(String requestDate, String company, String userId) {
+        long start = selectionMetrics.startRequest();
+        SelectionOutcome outcome = SelectionOutcome.ERROR;
+        try {
+            String formattedDate = rotationUtils.convertDate(requestDate);
+            Date currentDate = rotationUtils.getinDate(formattedDate);
+            
+            // Check if user has seen a campaign this week
+            Date weekStartDate = rotationUtils.getWeekStartDate(currentDate);
+            UserWeeklyState userState = selectionMetrics.timeStage(Stage.USER_STATE, 
+                    () -> getKnownUserState(userId, weekStartDate));
+            
+            // Eligible campaigns are only needed when the user has not engaged this week
+            List<CampaignMapping> cachedCampaigns = userState != null 
+                    && userState.getEngagement() != UserWeeklyState.Engagement.NONE
+                    ? null
+                    : selectionMetrics.timeStage(Stage.ELIGIBLE_CAMPAIGNS, 
+                            () -> getCachedEligibleCampaigns(formattedDate, company));
+            
+            CampaignSelection selection;
+            if (userState != null && (cachedCampaigns != null 
+                    || userState.getEngagement() != UserWeeklyState.Engagement.NONE)) {
+                selection = serveCampaign(userId, company, userState, currentDate,
+                        () -> cachedCampaigns,
+                        () -> selectionMetrics.timeStage(Stage.VIEW_COUNTS, 
+                                () -> campaignViewCounter.getViewCounts(userId)));
+            } else {
+                // More than one read is missing, load everything in one round trip
+                selection = serveFromUserSelection(userId, userState, cachedCampaigns, 
+                        company, formattedDate, currentDate, weekStartDate);
+            }
+            outcome = selection.getOutcome();
+            return selection;
+        } finally {
+            selectionMetrics.finishRequest(start, outcome);
+        }
+    }
+    
+    /**
+     * Get next eligible campaign for each of a batch of users of one company
+     * The company's eligible campaigns are loaded once and the weekly state and
+     * view counts of all users are fetched with set-based queries
+     * 
+     * @param requestDate in format yyyyMMdd
+     * @param company Company identifier
+     * @param userIds User identifiers, duplicates are ignored
+     * @return One result per distinct user, in request order
+     * @throws DataHandlingException with status 400 if the date or company is missing or invalid
+     */
+    public List<UserCampaignResult> getNextEligibleCampaigns(String requestDate, String company, 
+            List<String> userIds) throws DataHandlingException {
         
-        // Check if user has seen a campaign this week
+        if (company == null || company.trim().isEmpty()) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), "company is required");
+        }
+        if (requestDate == null) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), "date is required");
+        }
+        String formattedDate;
+        try {
+            formattedDate = rotationUtils.convertDate(requestDate);
+        } catch (DateTimeParseException e) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), 
+                    "date must be in format yyyyMMdd: " + requestDate);
+        }
+        Date currentDate = rotationUtils.getinDate(formattedDate);
         Date weekStartDate = rotationUtils.getWeekStartDate(currentDate);
-        Optional<UserCampaignHistory> userHistory = userCampaignHistoryRepository
-                .findRecentUserHistory(userId, weekStartDate);
         
-        if (userHistory.isPresent()) {
-            // User has already seen a campaign this week
-            UserCampaignHistory history = userHistory.get();
-            
-            if (history.getHasSubmittedForm()) {
+        List<String> distinctUserIds = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<String, UserWeeklyState> userStates = selectionMetrics.timeStage(Stage.USER_STATE, 
+                () -> getWeeklyStates(distinctUserIds, weekStartDate));
+        
+        // Only users who have not engaged this week need capping counts
+        List<String> unengagedUserIds = distinctUserIds.stream()
+                .filter(userId -> userStates.get(userId).getEngagement() == UserWeeklyState.Engagement.NONE)
+                .collect(Collectors.toList());
+        
+        List<CampaignMapping> eligibleCampaigns = unengagedUserIds.isEmpty()
+                ? new ArrayList<>()
+                : selectionMetrics.timeStage(Stage.ELIGIBLE_CAMPAIGNS, 
+                        () -> getEligibleCampaigns(formattedDate, company));
+        Map<String, Map<String, Long>> viewCounts = selectionMetrics.timeStage(Stage.VIEW_COUNTS, 
+                () -> campaignViewCounter.getViewCounts(unengagedUserIds));
+        
+        // Users who clicked learn more see their campaign again, loaded for all of them at once
+        Map<String, CampaignMapping> clickedCampaigns = getClickedCampaigns(userStates.values());
+        
+        List<UserCampaignResult> results = new ArrayList<>(distinctUserIds.size());
+        for (String userId : distinctUserIds) {
+            UserCampaignResult result;
+            try {
+                CampaignSelection selection = serveCampaign(userId, company, userStates.get(userId), currentDate,
+                        () -> eligibleCampaigns,
+                        () -> viewCounts.getOrDefault(userId, Collections.emptyMap()),
+                        clickedCampaigns::get);
+                result = new UserCampaignResult(userId, selection.getOutcome(), selection.getCampaign(), 
+                        selection.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Failed to select campaign for user {} of company {}", userId, company, e);
+                result = new UserCampaignResult(userId, SelectionOutcome.ERROR, null, 
+                        "Failed to select a campaign for this user");
+            }
+            selectionMetrics.recordOutcome(result.getOutcome());
+            results.add(result);
+        }
+        
+        log.info("Selected campaigns for {} users of company {}", results.size(), company);
+        return results;
+    }
+    
+    /**
+     * Load the campaigns of the users who clicked learn more this week in one query
+     * 
+     * @return Map of campaign id to campaign
+     */
+    private Map<String, CampaignMapping> getClickedCampaigns(Collection<UserWeeklyState> userStates) {
+        Set<String> campaignIds = userStates.stream()
+                .filter(state -> state.getEngagement() == UserWeeklyState.Engagement.CLICKED)
+                .map(UserWeeklyState::getCampaignId)
+                .collect(Collectors.toSet());
+        if (campaignIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        SelectionMetrics.countDatabaseCall();
+        Map<String, CampaignMapping> campaigns = new HashMap<>();
+        for (CampaignMapping campaign : campaignRepository.findAllById(campaignIds)) {
+            campaigns.put(campaign.getId(), campaign);
+        }
+        return campaigns;
+    }
+    
+    /**
+     * Apply the weekly engagement rules for one user and serve a campaign if allowed
+     */
+    private CampaignSelection serveCampaign(String userId, String company, UserWeeklyState userState, 
+            Date currentDate, Supplier<List<CampaignMapping>> eligibleCampaignsLoader,
+            Supplier<Map<String, Long>> viewCountsLoader) {
+        return serveCampaign(userId, company, userState, currentDate, eligibleCampaignsLoader, viewCountsLoader, 
+                campaignId -> {
+                    SelectionMetrics.countDatabaseCall();
+                    return campaignRepository.findById(campaignId).orElse(null);
+                });
+    }
+    
+    /**
+     * Apply the weekly engagement rules for one user and serve a campaign if allowed
+     * 
+     * @param campaignLoader Finds a campaign by id, null if it does not exist
+     */
+    private CampaignSelection serveCampaign(String userId, String company, UserWeeklyState userState, 
+            Date currentDate, Supplier<List<CampaignMapping>> eligibleCampaignsLoader,
+            Supplier<Map<String, Long>> viewCountsLoader,
+            Function<String, CampaignMapping> campaignLoader) {
+        
+        switch (userState.getEngagement()) {
+            case SUBMITTED:
                 // User submitted a form, don't show any more campaigns this week
-                throw new DataHandlingException(HttpStatus.OK.toString(), 
+                return CampaignSelection.notServed(SelectionOutcome.FORM_SUBMITTED, 
                         "User has already submitted a form this week");
-            }
-            
-            if (!history.getHasClickedLearnMore()) {
+            case SEEN:
                 // User has seen a campaign but hasn't clicked learn more, don't show again this week
-                throw new DataHandlingException(HttpStatus.OK.toString(), 
+                return CampaignSelection.notServed(SelectionOutcome.ALREADY_SEEN, 
                         "User has already seen a campaign this week");
-            }
-            
-            // User clicked learn more but hasn't submitted form, show the same campaign once more
-            return getSameCampaignForUser(history.getCampaignId(), userId);
+            case CLICKED:
+                // User clicked learn more but hasn't submitted form, show the same campaign once more
+                return CampaignSelection.served(getSameCampaignForUser(userState.getCampaignId(), userId, 
+                        campaignLoader));
+            default:
+                break;
         }
         
         // Get all eligible campaigns for the company that are currently active
-        List<CampaignMapping> eligibleCampaigns = getEligibleCampaigns(formattedDate, company);
+        List<CampaignMapping> eligibleCampaigns = eligibleCampaignsLoader.get();
         
         if (eligibleCampaigns.isEmpty()) {
-            throw new DataHandlingException(HttpStatus.OK.toString(), 
+            return CampaignSelection.notServed(SelectionOutcome.NONE_ELIGIBLE, 
                     "No eligible campaigns found for rotation");
         }
         
         // Get campaigns that the user hasn't exhausted (not reached display capping)
-        List<CampaignMapping> availableCampaigns = filterCampaignsForUser(eligibleCampaigns, userId);
+        Map<String, Long> viewCounts = viewCountsLoader.get();
+        long stageStart = System.nanoTime();
+        List<CampaignMapping> availableCampaigns = filterCampaignsForUser(eligibleCampaigns, viewCounts);
+        stageStart = selectionMetrics.recordStage(Stage.CAPPING_FILTER, stageStart);
         
         if (availableCampaigns.isEmpty()) {
-            throw new DataHandlingException(HttpStatus.OK.toString(), 
+            return CampaignSelection.notServed(SelectionOutcome.CAPPED, 
                     "User has already seen all eligible campaigns up to their display capping");
         }
         
         // Determine which campaign to show based on rotation rules
-        CampaignMapping selectedCampaign = selectCampaignForRotation(availableCampaigns, currentDate);
+        CampaignMapping selectedCampaign = selectCampaignForRotation(company, availableCampaigns, currentDate);
+        stageStart = selectionMetrics.recordStage(Stage.SELECTION, stageStart);
         
         if (selectedCampaign == null) {
-            throw new DataHandlingException(HttpStatus.OK.toString(), 
+            return CampaignSelection.notServed(SelectionOutcome.QUOTA_EXHAUSTED, 
                     "No campaigns available for rotation at this time");
         }
         
         // Update campaign statistics and create user history
         updateCampaignStatistics(selectedCampaign, currentDate, userId);
+        selectionMetrics.recordStage(Stage.STATISTICS, stageStart);
+        
+        return CampaignSelection.served(campaignPayloadCache.get(selectedCampaign, this::mapToDTO));
+    }
+    
+    /**
+     * Serve a campaign from the combined user selection query
+     * Whatever was already cached is kept; the rest is taken from the query
+     * result and stored in the caches for the next request
+     */
+    private CampaignSelection serveFromUserSelection(String userId, UserWeeklyState cachedState,
+            List<CampaignMapping> cachedCampaigns, String company, String formattedDate, Date currentDate,
+            Date weekStartDate) {
+        
+        // Snapshot the unwritten rows before the query, so a batch committing
+        // while it runs is seen in the snapshot or the result, never in neither
+        Optional<UserCampaignHistory> pendingHistory = cachedState == null
+                ? historyWriter.findPending(userId, weekStartDate)
+                : Optional.empty();
+        Map<String, Long> pendingViews = historyWriter.pendingViewCounts(userId);
+        
+        long loadGeneration = eligibleCampaignCache.getGeneration();
+        UserSelection loaded = selectionMetrics.timeStage(Stage.USER_SELECTION, () -> {
+            SelectionMetrics.countDatabaseCall();
+            return userSelectionRepository.findUserSelection(userId, weekStartDate, company, formattedDate);
+        });
+        
+        UserWeeklyState userState = cachedState;
+        if (userState == null) {
+            // Rows not written yet are newer than anything in the table
+            Optional<UserCampaignHistory> history = pendingHistory;
+            if (!history.isPresent()) {
+                history = loaded.getRecentHistory();
+            }
+            weeklyViewerFilter.recordLookup(weekStartDate, history.isPresent());
+            userState = userWeeklyStateCache.putLoaded(userId, 
+                    UserWeeklyState.from(weekStartDate.getTime(), history));
+        }
+        
+        List<CampaignMapping> eligibleCampaigns = cachedCampaigns;
+        if (eligibleCampaigns == null) {
+            eligibleCampaigns = filterActiveCampaigns(loaded.getEligibleCampaigns());
+            eligibleCampaignCache.put(company, formattedDate, eligibleCampaigns, loadGeneration);
+        }
         
-        return mapToDTO(selectedCampaign);
+        List<CampaignMapping> campaigns = eligibleCampaigns;
+        return serveCampaign(userId, company, userState, currentDate,
+                () -> campaigns,
+                () -> campaignViewCounter.withPendingViews(loaded.getViewCounts(), pendingViews));
+    }
+    
+    /**
+     * Get the user's weekly state without a history lookup
+     * Known from the cache, or NONE when the viewer filter rules out any history this week
+     * A NONE from the filter is not cached: the filter is only as current as its
+     * last refresh, and caching would add the NONE TTL to that window
+     * 
+     * @return Weekly state, or null if it has to be loaded
+     */
+    private UserWeeklyState getKnownUserState(String userId, Date weekStartDate) {
+        UserWeeklyState state = userWeeklyStateCache.getIfPresent(userId, weekStartDate);
+        if (state == null && !weeklyViewerFilter.mightHaveViewed(userId, weekStartDate)) {
+            state = UserWeeklyState.from(weekStartDate.getTime(), Optional.empty());
+        }
+        return state;
+    }
+    
+    /**
+     * Get the weekly state of many users, loading all cache misses with one query per chunk
+     */
+    private Map<String, UserWeeklyState> getWeeklyStates(List<String> userIds, Date weekStartDate) {
+        Map<String, UserWeeklyState> states = new HashMap<>(userIds.size() * 2);
+        List<String> misses = new ArrayList<>();
+        
+        for (String userId : userIds) {
+            UserWeeklyState state = getKnownUserState(userId, weekStartDate);
+            if (state != null) {
+                states.put(userId, state);
+            } else {
+                misses.add(userId);
+            }
+        }
+        
+        // Unwritten rows are taken before the query, as in serveFromUserSelection
+        Map<String, UserCampaignHistory> pendingHistory = new HashMap<>();
+        for (String userId : misses) {
+            historyWriter.findPending(userId, weekStartDate).ifPresent(history -> pendingHistory.put(userId, history));
+        }
+        
+        // Rows come newest first, so the first row per user is the one that counts
+        Map<String, UserCampaignHistory> latestHistory = new HashMap<>(misses.size() * 2);
+        for (int from = 0; from < misses.size(); from += BULK_QUERY_CHUNK_SIZE) {
+            List<String> chunk = misses.subList(from, Math.min(from + BULK_QUERY_CHUNK_SIZE, misses.size()));
+            SelectionMetrics.countDatabaseCall();
+            for (UserCampaignHistory history : userCampaignHistoryRepository
+                    .findRecentHistoryForUsers(chunk, weekStartDate)) {
+                latestHistory.putIfAbsent(history.getUserId(), history);
+            }
+        }
+        
+        for (String userId : misses) {
+            Optional<UserCampaignHistory> history = Optional.ofNullable(pendingHistory.get(userId));
+            if (!history.isPresent()) {
+                history = Optional.ofNullable(latestHistory.get(userId));
+            }
+            weeklyViewerFilter.recordLookup(weekStartDate, history.isPresent());
+            states.put(userId, userWeeklyStateCache.putLoaded(userId,
+                    UserWeeklyState.from(weekStartDate.getTime(), history)));
+        }
+        
+        return states;
     }
     
     /**
      * Get the list of eligible campaigns based on date and company
+     * Served from the eligible campaign cache, the query only runs on a miss
      */
     private List<CampaignMapping> getEligibleCampaigns(String requestDate, String company) {
-        List<CampaignMapping> campaigns = campaignRepository.getEligibleCampaignsBasedonRequestDate(requestDate, company);
+        if (campaignCompanyIndex.isReady() && campaignCompanyIndex.getCampaignIds(company).isEmpty()) {
+            // No campaign is assigned to this company at all
+            return new ArrayList<>();
+        }
         
-        // Filter out completed campaigns or campaigns with exhausted weekly frequency
+        return eligibleCampaignCache.get(company, requestDate, () -> {
+            SelectionMetrics.countDatabaseCall();
+            return filterActiveCampaigns(campaignRepository
+                    .getEligibleCampaignsBasedonRequestDate(requestDate, company));
+        });
+    }
+    
+    /**
+     * Get the list of eligible campaigns based on date and company without querying
+     * 
+     * @return Eligible campaigns, or null if they are not cached
+     */
+    private List<CampaignMapping> getCachedEligibleCampaigns(String requestDate, String company) {
+        if (campaignCompanyIndex.isReady() && campaignCompanyIndex.getCampaignIds(company).isEmpty()) {
+            // No campaign is assigned to this company at all
+            return new ArrayList<>();
+        }
+        return eligibleCampaignCache.getIfPresent(company, requestDate);
+    }
+    
+    /**
+     * Filter out completed campaigns or campaigns with exhausted weekly frequency
+     */
+    private List<CampaignMapping> filterActiveCampaigns(List<CampaignMapping> campaigns) {
         return campaigns.stream()
                 .filter(campaign -> !"COMPLETED".equals(campaign.getStatus()))
                 .filter(campaign -> campaign.getDisplayCapping() > 0)
@@ -124,16 +479,11 @@ public class RotationCampaignService {
     }
     
     /**
-     * Filter campaigns based on user's history with them
+     * Filter campaigns based on how often the user has seen them
+     * Package-private for the selection benchmarks
      */
-    private List<CampaignMapping> filterCampaignsForUser(List<CampaignMapping> campaigns, String userId) {
-        // Get user's campaign history
-        List<UserCampaignHistory> userHistory = userCampaignHistoryRepository.findAllByUserId(userId);
-        
-        // Group history by campaign and count occurrences
-        Map<String, Long> campaignDisplayCounts = userHistory.stream()
-                .collect(Collectors.groupingBy(UserCampaignHistory::getCampaignId, Collectors.counting()));
-        
+    List<CampaignMapping> filterCampaignsForUser(List<CampaignMapping> campaigns, 
+            Map<String, Long> campaignDisplayCounts) {
         // Filter campaigns that haven't reached display capping for this user
         return campaigns.stream()
                 .filter(campaign -> {
@@ -145,89 +495,28 @@ public class RotationCampaignService {
     
     /**
      * Select which campaign to display next based on rotation rules
+     * Walks the company's weekly rotation plan and takes one impression from
+     * the first campaign with quota left; quotas of an older week count as
+     * full, so nothing is reset or saved here
+     * Package-private for the selection benchmarks
      */
-    private CampaignMapping selectCampaignForRotation(List<CampaignMapping> campaigns, Date currentDate) {
-        // First check if we need to reset weekly frequency counters
-        updateWeeklyFrequencyCounts(campaigns, currentDate);
-        
-        // Filter campaigns that still have weekly frequency available
-        List<CampaignMapping> availableThisWeek = campaigns.stream()
-                .filter(campaign -> campaign.getFrequencyPerWeek() > 0)
-                .collect(Collectors.toList());
-        
-        if (availableThisWeek.isEmpty()) {
-            return null;
-        }
-        
-        // For rotation, find the campaign that was shown least recently
-        return availableThisWeek.stream()
-                .sorted((c1, c2) -> {
-                    // If one has never been shown, prioritize it
-                    if (c1.getUpdatedDate() == null) return -1;
-                    if (c2.getUpdatedDate() == null) return 1;
-                    
-                    // Otherwise, show the one that was shown longest ago
-                    return c1.getUpdatedDate().compareTo(c2.getUpdatedDate());
-                })
-                .findFirst()
-                .orElse(null);
-    }
-    
-    /**
-     * Update weekly frequency counters if needed
-     */
-    private void updateWeeklyFrequencyCounts(List<CampaignMapping> campaigns, Date currentDate) {
-        Date currentWeekStart = rotationUtils.getWeekStartDate(currentDate);
-        
-        for (CampaignMapping campaign : campaigns) {
-            if (campaign.getUpdatedDate() == null) {
-                // Never updated, nothing to reset
-                continue;
-            }
-            
-            Date lastUpdateWeekStart = rotationUtils.getWeekStartDate(campaign.getUpdatedDate());
-            
-            // If campaign was last updated in a previous week, reset its weekly frequency
-            if (lastUpdateWeekStart.before(currentWeekStart)) {
-                if (campaign.getOrginalFrequencyPerWeek() != null) {
-                    campaign.setFrequencyPerWeek(campaign.getOrginalFrequencyPerWeek());
-                    campaignRepository.save(campaign);
-                }
+    CampaignMapping selectCampaignForRotation(String company, List<CampaignMapping> campaigns, Date currentDate) {
+        for (CampaignMapping campaign : campaignRotationManager.getCampaignsInRotationOrder(company, campaigns)) {
+            if (campaignQuotaCounters.tryAcquire(campaign, currentDate)) {
+                return campaign;
             }
         }
+        
+        return null;
     }
     
     /**
      * Update campaign statistics after selection for display
+     * The impression itself was taken from the quota counters during selection
+     * and reaches the campaigns table with the next counter flush; the history
+     * row is written asynchronously by the history writer
      */
     private void updateCampaignStatistics(CampaignMapping campaign, Date currentDate, String userId) {
-        // Decrement counters
-        campaign.setFrequencyPerWeek(campaign.getFrequencyPerWeek() - 1);
-        
-        // Back up original frequency per week if not already done
-        if (campaign.getOrginalFrequencyPerWeek() == null) {
-            campaign.setOrginalFrequencyPerWeek(campaign.getFrequencyPerWeek() + 1);
-        }
-        
-        // Update timestamps
-        campaign.setUpdatedDate(currentDate);
-        campaign.setRequested_date(currentDate);
-        campaign.setStart_week_of_requested_date(rotationUtils.getWeekStartDate(currentDate));
-        
-        // Update visibility status
-        String visibility = campaign.getDisplayCapping() == 1 ? "COMPLETED" : "VISIBLE";
-        campaign.setVisibility(visibility);
-        
-        // Set rotation status if needed
-        if (campaign.getFrequencyPerWeek() == 0 && campaign.getDisplayCapping() > 0) {
-            campaign.setRotation_status("ROTATED_RECENTLY");
-        } else {
-            campaign.setRotation_status(null);
-        }
-        
-        // Save updated campaign
-        campaignRepository.save(campaign);
-        
         // Create user history record
         UserCampaignHistory history = new UserCampaignHistory();
         history.setUserId(userId);
@@ -236,50 +525,63 @@ public class RotationCampaignService {
         history.setHasClickedLearnMore(false);
         history.setHasSubmittedForm(false);
         
-        userCampaignHistoryRepository.save(history);
+        Date weekStartDate = rotationUtils.getWeekStartDate(currentDate);
+        // Into the filter first, so a concurrent request never skips a lookup that would find the row
+        weeklyViewerFilter.recordView(userId, weekStartDate);
+        historyWriter.append(history);
+        userWeeklyStateCache.recordView(userId, campaign.getId(), weekStartDate);
     }
     
     /**
      * Handle case where user clicked learn more but didn't submit form
      */
-    private CampaignResponseDTO getSameCampaignForUser(String campaignId, String userId) {
-        CampaignMapping campaign = campaignRepository.findById(campaignId)
-                .orElseThrow(() -> new RuntimeException("Campaign not found with id: " + campaignId));
-        
-        // Update user history to track that we've shown it the second time
-        UserCampaignHistory history = userCampaignHistoryRepository
-                .findByCampaignIdAndUserId(campaignId, userId)
-                .orElseThrow(() -> new RuntimeException("User history not found"));
+    private CampaignPayload getSameCampaignForUser(String campaignId, String userId,
+            Function<String, CampaignMapping> campaignLoader) {
+        CampaignMapping campaign = campaignLoader.apply(campaignId);
+        if (campaign == null) {
+            throw new RuntimeException("Campaign not found with id: " + campaignId);
+        }
         
-        // Mark as if they've submitted form to prevent further shows
-        history.setHasSubmittedForm(true);
-        userCampaignHistoryRepository.save(history);
+        // Update user history to track that we've shown it the second time,
+        // marking it as if they've submitted form to prevent further shows
+        markFormSubmitted(campaignId, userId);
         
-        return mapToDTO(campaign);
+        return campaignPayloadCache.get(campaign, this::mapToDTO);
     }
     
     /**
      * Record that user has clicked learn more on a campaign
      */
     public void recordLearnMoreClick(String campaignId, String userId) {
-        UserCampaignHistory history = userCampaignHistoryRepository
-                .findByCampaignIdAndUserId(campaignId, userId)
-                .orElseThrow(() -> new RuntimeException("User history not found"));
-        
-        history.setHasClickedLearnMore(true);
-        userCampaignHistoryRepository.save(history);
+        if (!historyWriter.updatePending(userId, campaignId, history -> history.setHasClickedLearnMore(true))) {
+            UserCampaignHistory history = userCampaignHistoryRepository
+                    .findByCampaignIdAndUserId(campaignId, userId)
+                    .orElseThrow(() -> new RuntimeException("User history not found"));
+            
+            history.setHasClickedLearnMore(true);
+            userCampaignHistoryRepository.save(history);
+        }
+        userWeeklyStateCache.recordLearnMoreClick(userId, campaignId);
     }
     
     /**
      * Record that user has submitted a form for a campaign
      */
     public void recordFormSubmission(String campaignId, String userId) {
-        UserCampaignHistory history = userCampaignHistoryRepository
-                .findByCampaignIdAndUserId(campaignId, userId)
-                .orElseThrow(() -> new RuntimeException("User history not found"));
-        
-        history.setHasSubmittedForm(true);
-        userCampaignHistoryRepository.save(history);
+        markFormSubmitted(campaignId, userId);
+    }
+    
+    private void markFormSubmitted(String campaignId, String userId) {
+        if (!historyWriter.updatePending(userId, campaignId, history -> history.setHasSubmittedForm(true))) {
+            SelectionMetrics.countDatabaseCall();
+            UserCampaignHistory history = userCampaignHistoryRepository
+                    .findByCampaignIdAndUserId(campaignId, userId)
+                    .orElseThrow(() -> new RuntimeException("User history not found"));
+            
+            history.setHasSubmittedForm(true);
+            userCampaignHistoryRepository.save(history);
+        }
+        userWeeklyStateCache.recordFormSubmission(userId, campaignId);
     }
     
     /**
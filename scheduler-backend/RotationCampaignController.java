@@ -1,17 +1,29 @@
 package com.usbank.corp.dcr.api.controller;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.usbank.corp.dcr.api.exception.DataHandlingException;
-import com.usbank.corp.dcr.api.model.CampaignResponseDTO;
+import com.usbank.corp.dcr.api.model.BulkNextCampaignRequest;
+import com.usbank.corp.dcr.api.model.CampaignPayload;
+import com.usbank.corp.dcr.api.model.CampaignSelection;
+import com.usbank.corp.dcr.api.model.InteractionEvent;
+import com.usbank.corp.dcr.api.model.InteractionEventResult;
+import com.usbank.corp.dcr.api.model.UserCampaignResult;
+import com.usbank.corp.dcr.api.service.InteractionEventService;
 import com.usbank.corp.dcr.api.service.RotationCampaignService;
 
 import lombok.extern.slf4j.Slf4j;
@@ -21,29 +33,95 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class RotationCampaignController {
 
+    static final String OUTCOME_HEADER = "X-Campaign-Outcome";
+    static final String OUTCOME_MESSAGE_HEADER = "X-Campaign-Outcome-Message";
+    
     @Autowired
     RotationCampaignService campaignService;
     
+    @Autowired
+    InteractionEventService interactionEventService;
+    
+    @Value("${campaign.bulk.max-users:500}")
+    int maxBulkUsers;
+    
+    @Value("${campaign.events.max-batch:500}")
+    int maxEventBatch;
+    
+    // Report "no campaign" outcomes as DataHandlingException, as before the 204 mapping
+    @Value("${campaign.selection.legacy-exceptions:false}")
+    boolean legacyExceptions;
+    
     /**
      * Get the next eligible campaign for a user
      * 
      * @param date Request date in format yyyyMMdd
      * @param company Company identifier
      * @param userId User identifier
-     * @return Next eligible campaign, or appropriate status if none available
-     * @throws DataHandlingException if there's an issue with data handling
+     * @param webRequest Current request, for If-None-Match
+     * @return Next eligible campaign as pre-serialized JSON with its ETag, 304 if the client 
+     *         already holds it, or 204 with the outcome in the X-Campaign-Outcome header
+     * @throws DataHandlingException if none is available and legacy exceptions are enabled
      */
     @RequestMapping(method = RequestMethod.GET, value = "/next")
-    public ResponseEntity<CampaignResponseDTO> getNextEligibleCampaign(
+    public ResponseEntity<byte[]> getNextEligibleCampaign(
             @RequestParam("date") String date,
             @RequestParam("company") String company,
-            @RequestParam("userId") String userId) throws DataHandlingException {
+            @RequestParam("userId") String userId,
+            WebRequest webRequest) throws DataHandlingException {
         
         log.info("Getting next eligible campaign for user {} from company {} on date {}", 
                 userId, company, date);
         
-        CampaignResponseDTO campaign = campaignService.getNextEligibleCampaign(date, company, userId);
-        return ResponseEntity.ok(campaign);
+        CampaignSelection selection = campaignService.selectNextCampaign(date, company, userId);
+        if (selection.isServed()) {
+            CampaignPayload payload = selection.getPayload();
+            if (webRequest.checkNotModified(payload.getEtag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(payload.getEtag()).build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(payload.getEtag())
+                    .body(payload.getJson());
+        }
+        
+        if (legacyExceptions) {
+            throw new DataHandlingException(HttpStatus.OK.toString(), selection.getMessage());
+        }
+        return ResponseEntity.noContent()
+                .header(OUTCOME_HEADER, selection.getOutcome().getTag())
+                .header(OUTCOME_MESSAGE_HEADER, selection.getMessage())
+                .build();
+    }
+    
+    /**
+     * Get the next eligible campaign for each of a batch of users of one company
+     * 
+     * @param request Request date, company and user identifiers
+     * @return One result per distinct user, with its outcome and either a campaign or the reason none was served
+     * @throws DataHandlingException if the request is invalid
+     */
+    @PostMapping("/next/bulk")
+    public ResponseEntity<List<UserCampaignResult>> getNextEligibleCampaigns(
+            @RequestBody BulkNextCampaignRequest request) throws DataHandlingException {
+        
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), "userIds must not be empty");
+        }
+        if (request.getUserIds().size() > maxBulkUsers) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), 
+                    "At most " + maxBulkUsers + " userIds are allowed per request");
+        }
+        if (request.getUserIds().contains(null)) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), "userIds must not contain null");
+        }
+        
+        log.info("Getting next eligible campaigns for {} users from company {} on date {}", 
+                request.getUserIds().size(), request.getCompany(), request.getDate());
+        
+        List<UserCampaignResult> results = campaignService.getNextEligibleCampaigns(
+                request.getDate(), request.getCompany(), request.getUserIds());
+        return ResponseEntity.ok(results);
     }
     
     /**
@@ -81,4 +159,29 @@ public class RotationCampaignController {
         campaignService.recordFormSubmission(campaignId, userId);
         return ResponseEntity.ok("Form submission recorded");
     }
-}
\ No newline at end of file
+    
+    /**
+     * Record a batch of learn more clicks and form submissions
+     * Events carry idempotency keys, so a batch can be resent safely after a failure
+     * 
+     * @param events Interaction events
+     * @return One result per event, in request order
+     * @throws DataHandlingException if the batch is empty or too large
+     */
+    @PostMapping("/events")
+    public ResponseEntity<List<InteractionEventResult>> recordInteractionEvents(
+            @RequestBody List<InteractionEvent> events) throws DataHandlingException {
+        
+        if (events == null || events.isEmpty()) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), "events must not be empty");
+        }
+        if (events.size() > maxEventBatch) {
+            throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), 
+                    "At most " + maxEventBatch + " events are allowed per request");
+        }
+        
+        log.info("Recording batch of {} interaction events", events.size());
+        
+        return ResponseEntity.ok(interactionEventService.applyEvents(events));
+    }
+}
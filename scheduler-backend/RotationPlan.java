@@ -0,0 +1,101 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+
+/**
+ * Immutable rotation order of one company's campaigns for one week
+ *
+ * Campaigns are numbered by creation order; order[position] holds the
+ * ordinal of the campaign shown at that rotation position. Plans are built
+ * by the weekly rotation reset and only ever replaced as a whole.
+ */
+public final class RotationPlan {
+
+    private final long weekStart;
+    private final String[] campaignIds;
+    private final int[] order;
+
+    RotationPlan(long weekStart, String[] campaignIds, int[] order) {
+        this.weekStart = weekStart;
+        this.campaignIds = campaignIds;
+        this.order = order;
+    }
+
+    /**
+     * @return Start of the week the plan was built for, in epoch millis
+     */
+    public long getWeekStart() {
+        return weekStart;
+    }
+
+    /**
+     * @return Number of campaigns in the plan
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return Id of the campaign at a rotation position
+     */
+    public String campaignAt(int position) {
+        return campaignIds[order[position]];
+    }
+
+    /**
+     * Pick the first campaign in rotation order among the eligible ones
+     *
+     * @param eligibleCampaigns Campaigns that may be shown
+     * @return First eligible campaign of the plan, or null if the plan contains none of them
+     */
+    public CampaignMapping firstOf(List<CampaignMapping> eligibleCampaigns) {
+        Map<String, CampaignMapping> byId = new HashMap<>(eligibleCampaigns.size() * 2);
+        for (CampaignMapping campaign : eligibleCampaigns) {
+            byId.put(campaign.getId(), campaign);
+        }
+
+        for (int ordinal : order) {
+            CampaignMapping campaign = byId.get(campaignIds[ordinal]);
+            if (campaign != null) {
+                return campaign;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put the eligible campaigns in rotation order
+     * Campaigns created since the plan was built follow in their given order
+     *
+     * @param eligibleCampaigns Campaigns that may be shown
+     * @return New list of the eligible campaigns, first to show first
+     */
+    public List<CampaignMapping> inOrder(List<CampaignMapping> eligibleCampaigns) {
+        Map<String, CampaignMapping> byId = new LinkedHashMap<>(eligibleCampaigns.size() * 2);
+        for (CampaignMapping campaign : eligibleCampaigns) {
+            byId.put(campaign.getId(), campaign);
+        }
+
+        List<CampaignMapping> ordered = new ArrayList<>(eligibleCampaigns.size());
+        for (int ordinal : order) {
+            CampaignMapping campaign = byId.remove(campaignIds[ordinal]);
+            if (campaign != null) {
+                ordered.add(campaign);
+            }
+        }
+        ordered.addAll(byId.values());
+        return ordered;
+    }
+
+    @Override
+    public String toString() {
+        return "RotationPlan" + Arrays.toString(order);
+    }
+}
@@ -0,0 +1,14 @@
+package com.usbank.corp.dcr.api.entity;
+
+/**
+ * Rotation state of a campaign, stored in rotation_state
+ * The position within the rotation is kept separately in rotation_position
+ */
+public enum RotationState {
+    
+    /** Takes part in rotation at its rotation_position */
+    IN_ROTATION,
+    
+    /** Weekly frequency used up, skipped until the next weekly reset */
+    ROTATED_RECENTLY
+}
@@ -1,28 +1,52 @@
 package com.usbank.corp.dcr.api.utils;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAdjusters;
-import java.util.Calendar;
+import java.time.temporal.WeekFields;
 import java.util.Date;
-import java.util.TimeZone;
-import java.util.TreeSet;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+/**
+ * Date and week calculations for campaign rotation
+ *
+ * Everything is derived from epoch-day and epoch-week integers. The facts
+ * about a day (its start, its week's start and end, epoch week and week key)
+ * are computed once and kept in a small lock-free table, so repeated lookups
+ * for the same days only allocate the returned Date. All formatters are
+ * immutable and shared, which makes the class safe for concurrent use.
+ */
 @Component
 public class RotationUtils {
     
     private static final Logger log = LoggerFactory.getLogger(RotationUtils.class);
-    private static final String DATE_FORMAT = "yyyy-MM-dd";
-    private static final SimpleDateFormat SDF = new SimpleDateFormat(DATE_FORMAT);
+    private static final DateTimeFormatter INPUT_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+    
+    // Same week numbering as Calendar.WEEK_OF_YEAR in the default locale
+    private static final WeekFields WEEK_FIELDS = WeekFields.of(Locale.getDefault());
+    
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    
+    // Power of two; covers a few months of distinct days before slots are reused
+    private static final int DAY_SLOTS = 128;
+    
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final AtomicReferenceArray<Day> days = new AtomicReferenceArray<>(DAY_SLOTS);
+    
+    // Most requests carry the same date string, remember the last one parsed
+    private volatile Parsed lastConverted;
+    private volatile Parsed lastParsed;
     
     /**
      * Convert Date from yyyyMMdd to yyyy-MM-dd
@@ -30,10 +54,15 @@ public class RotationUtils {
      * @return formatted date string
      */
     public String convertDate(String dateString) {
-        DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("yyyyMMdd");
-        LocalDate date = LocalDate.parse(dateString, inputFormatter);
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(DATE_FORMAT);
-        return date.format(outputFormatter);
+        Parsed last = lastConverted;
+        if (last != null && last.text.equals(dateString)) {
+            return last.converted;
+        }
+        
+        LocalDate date = LocalDate.parse(dateString, INPUT_FORMAT);
+        String converted = date.format(DATE_FORMAT);
+        lastConverted = new Parsed(dateString, converted, null);
+        return converted;
     }
     
     /**
@@ -44,9 +73,7 @@ public class RotationUtils {
      * @return Start date of the week
      */
     public Date getWeekStartDate(Date date) {
-        LocalDate localDate = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate weekStart = localDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-        return Date.from(weekStart.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        return new Date(dayOf(date.getTime()).weekStartMillis);
     }
     
     /**
@@ -57,9 +84,28 @@ public class RotationUtils {
      * @return End date of the week
      */
     public Date getWeekEndDate(Date date) {
-        LocalDate localDate = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate weekEnd = localDate.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
-        return Date.from(weekEnd.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        return new Date(dayOf(date.getTime()).weekEndMillis);
+    }
+    
+    /**
+     * Get the epoch day of a date in the local time zone
+     * 
+     * @param date Date to get the epoch day for
+     * @return Number of days since 1970-01-01
+     */
+    public long getEpochDay(Date date) {
+        return dayOf(date.getTime()).epochDay;
+    }
+    
+    /**
+     * Get the epoch week of a date
+     * Weeks start on Monday; week 0 is the week of 1970-01-01
+     * 
+     * @param date Date to get the epoch week for
+     * @return Number of whole weeks since the epoch
+     */
+    public int getEpochWeek(Date date) {
+        return dayOf(date.getTime()).epochWeek;
     }
     
     /**
@@ -70,16 +116,7 @@ public class RotationUtils {
      * @return Week number (1-based) relative to campaign start
      */
     public int getWeekNumberInCampaign(Date currentDate, Date campaignStartDate) {
-        // Get start of week for both dates
-        Date currentWeekStart = getWeekStartDate(currentDate);
-        Date campaignWeekStart = getWeekStartDate(campaignStartDate);
-        
-        // Calculate difference in days
-        long diffInMillis = currentWeekStart.getTime() - campaignWeekStart.getTime();
-        long diffInDays = TimeUnit.DAYS.convert(diffInMillis, TimeUnit.MILLISECONDS);
-        
-        // Calculate week number (1-based)
-        return (int)(diffInDays / 7) + 1;
+        return getEpochWeek(currentDate) - getEpochWeek(campaignStartDate) + 1;
     }
     
     /**
@@ -89,12 +126,7 @@ public class RotationUtils {
      * @return Date object
      */
     public Date getinDate(String dateString) {
-        try {
-            return SDF.parse(dateString);
-        } catch (ParseException e) {
-            log.error("Error parsing date: {}", dateString, e);
-            throw new RuntimeException("Error parsing date: " + dateString, e);
-        }
+        return new Date(parseDay(dateString).startMillis);
     }
     
     /**
@@ -117,11 +149,19 @@ public class RotationUtils {
      * @return Week key in YYYY-WW format
      */
     public String getWeekKey(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        int year = cal.get(Calendar.YEAR);
-        int week = cal.get(Calendar.WEEK_OF_YEAR);
-        return year + "-" + String.format("%02d", week);
+        int weekKey = getCompactWeekKey(date);
+        int week = weekKey % 100;
+        return (weekKey / 100) + (week < 10 ? "-0" : "-") + week;
+    }
+    
+    /**
+     * Get week key for a given date as a single integer
+     * 
+     * @param date The date to get week key for
+     * @return Week key as YYYYWW, e.g. 202507 for week 7 of 2025
+     */
+    public int getCompactWeekKey(Date date) {
+        return dayOf(date.getTime()).weekKey;
     }
     
     /**
@@ -165,31 +205,118 @@ public class RotationUtils {
      * @param campaignEndDate End date of the campaign
      * @return Start date of the week containing the requested date
      */
-    public Date getWeekNearestStartDateBasedonRequestedDate(String requestedDate, 
+    public Date getWeekNearestStartDateBasedonRequestedDate(String requestedDate,
             String campaignStartDate,
             String campaignEndDate) {
+        Day requested = parseDay(requestedDate);
+        Day start = parseDay(campaignStartDate);
+        Day end = parseDay(campaignEndDate);
+        
+        // Get start of the week for requested date
+        long weekStart = requested.weekStartMillis;
+        
+        // Adjust if before campaign start
+        if (weekStart < start.startMillis) {
+            weekStart = start.weekStartMillis;
+        }
+        
+        // Adjust if after campaign end
+        if (weekStart > end.startMillis) {
+            throw new RuntimeException("Requested date is after campaign end date");
+        }
+        
+        return new Date(weekStart);
+    }
+    
+    private Day parseDay(String dateString) {
+        Parsed last = lastParsed;
+        if (last != null && last.text.equals(dateString)) {
+            return last.day;
+        }
+        
         try {
-            Date reqDate = SDF.parse(requestedDate);
-            Date startDate = SDF.parse(campaignStartDate);
-            Date endDate = SDF.parse(campaignEndDate);
-            
-            // Get start of the week for requested date
-            Date weekStart = getWeekStartDate(reqDate);
-            
-            // Adjust if before campaign start
-            if (weekStart.before(startDate)) {
-                weekStart = getWeekStartDate(startDate);
-            }
-            
-            // Adjust if after campaign end
-            if (weekStart.after(endDate)) {
-                throw new RuntimeException("Requested date is after campaign end date");
+            Day day = dayOfEpochDay(LocalDate.parse(dateString, DATE_FORMAT).toEpochDay());
+            lastParsed = new Parsed(dateString, null, day);
+            return day;
+        } catch (DateTimeParseException e) {
+            log.error("Error parsing date: {}", dateString, e);
+            throw new RuntimeException("Error parsing date: " + dateString, e);
+        }
+    }
+    
+    /**
+     * Find the local day containing an instant
+     * The local day is at most one day away from the UTC day, so the
+     * candidates are checked before converting through the time zone
+     */
+    private Day dayOf(long millis) {
+        long utcDay = Math.floorDiv(millis, MILLIS_PER_DAY);
+        for (long epochDay = utcDay - 1; epochDay <= utcDay + 1; epochDay++) {
+            Day day = days.get(slot(epochDay));
+            if (day != null && day.epochDay == epochDay && day.contains(millis)) {
+                return day;
             }
-            
-            return weekStart;
-        } catch (ParseException e) {
-            log.error("Error parsing date", e);
-            throw new RuntimeException("Error parsing date", e);
+        }
+        
+        return dayOfEpochDay(Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay());
+    }
+    
+    private Day dayOfEpochDay(long epochDay) {
+        int slot = slot(epochDay);
+        Day day = days.get(slot);
+        if (day == null || day.epochDay != epochDay) {
+            // Racing threads compute the same immutable value, last write wins
+            day = new Day(LocalDate.ofEpochDay(epochDay), zone);
+            days.set(slot, day);
+        }
+        return day;
+    }
+    
+    private static int slot(long epochDay) {
+        return (int) (epochDay & (DAY_SLOTS - 1));
+    }
+    
+    /**
+     * Everything known about one local day, immutable
+     */
+    private static final class Day {
+        private final long epochDay;
+        private final long startMillis;
+        private final long endMillis;
+        private final int epochWeek;
+        private final int weekKey;
+        private final long weekStartMillis;
+        private final long weekEndMillis;
+
+        Day(LocalDate date, ZoneId zone) {
+            this.epochDay = date.toEpochDay();
+            this.startMillis = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            this.endMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            // 1970-01-01 is a Thursday, shift by 3 days so weeks break on Monday
+            this.epochWeek = (int) Math.floorDiv(epochDay + 3, 7L);
+            // Calendar year with Calendar.WEEK_OF_YEAR, as the key was always built
+            this.weekKey = date.getYear() * 100 + date.get(WEEK_FIELDS.weekOfWeekBasedYear());
+            this.weekStartMillis = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .atStartOfDay(zone).toInstant().toEpochMilli();
+            this.weekEndMillis = date.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY))
+                    .atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+
+        boolean contains(long millis) {
+            return millis >= startMillis && millis < endMillis;
+        }
+    }
+    
+    private static final class Parsed {
+        private final String text;
+        private final String converted;
+        private final Day day;
+
+        Parsed(String text, String converted, Day day) {
+            this.text = text;
+            this.converted = converted;
+            this.day = day;
         }
     }
-}
\ No newline at end of file
+}
+    
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cluster-wide lock of one scheduled job
+ * Written with JDBC by SchedulerLockService; mapped so the table is part of
+ * the schema. The fencing token grows with every acquisition, and the run
+ * key and checkpoint let a new holder resume an interrupted run.
+ */
+@Entity
+@Table(name = "scheduler_lock")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SchedulerLock {
+    @Id
+    @Column(name = "job_name", length = 100)
+    private String jobName;
+    
+    @Column(name = "owner_id", length = 200)
+    private String owner;
+    
+    @Column(nullable = false, name = "lease_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseUntil;
+    
+    @Column(nullable = false, name = "fencing_token")
+    private Long fencingToken;
+    
+    @Column(name = "run_key", length = 100)
+    private String runKey;
+    
+    @Column(name = "run_checkpoint", length = 200)
+    private String checkpoint;
+    
+    @Column(nullable = false, name = "run_completed")
+    private Boolean runCompleted;
+}
@@ -0,0 +1,322 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cluster-wide leases for scheduled jobs, backed by the scheduler_lock table
+ *
+ * Every instance runs the same @Scheduled methods; a job that must run on
+ * one node only takes a lease first and skips the run if another node holds
+ * it. A lease expires unless renewed, so when its holder dies another node
+ * can take it over. While held, a lease is renewed in the background.
+ *
+ * Every acquisition increments the job's fencing token. Writes guarded with
+ * Lease.renew or Lease.checkpoint in the same transaction only commit while
+ * the token is still current, so a node that lost its lease (e.g. after a
+ * long pause) cannot overwrite the work of the next holder. The run key and
+ * checkpoint let that next holder resume an interrupted run from the last
+ * committed chunk.
+ *
+ * Only plain SQL is used and lease times come from the application clock,
+ * so the lease should be much longer than the expected clock skew.
+ */
+@Service
+public class SchedulerLockService {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerLockService.class);
+
+    private static final String INSERT_LOCK = "INSERT INTO [dbo].[scheduler_lock] "
+            + "(job_name, owner_id, lease_until, fencing_token, run_key, run_checkpoint, run_completed) "
+            + "VALUES (?, NULL, ?, 0, NULL, NULL, ?)";
+
+    private static final String ACQUIRE = "UPDATE [dbo].[scheduler_lock] "
+            + "SET owner_id = ?, lease_until = ?, fencing_token = fencing_token + 1 "
+            + "WHERE job_name = ? AND (owner_id IS NULL OR lease_until < ?)";
+
+    private static final String SELECT_LOCK = "SELECT fencing_token, run_key, run_checkpoint, run_completed "
+            + "FROM [dbo].[scheduler_lock] WHERE job_name = ? AND owner_id = ?";
+
+    private static final String RENEW = "UPDATE [dbo].[scheduler_lock] SET lease_until = ? "
+            + "WHERE job_name = ? AND owner_id = ? AND fencing_token = ?";
+
+    private static final String CHECKPOINT = "UPDATE [dbo].[scheduler_lock] "
+            + "SET run_key = ?, run_checkpoint = ?, run_completed = ?, lease_until = ? "
+            + "WHERE job_name = ? AND owner_id = ? AND fencing_token = ?";
+
+    private static final String VERIFY = "SELECT COUNT(*) FROM [dbo].[scheduler_lock] "
+            + "WHERE job_name = ? AND owner_id = ? AND fencing_token = ? AND lease_until >= ?";
+
+    private static final String RELEASE = "UPDATE [dbo].[scheduler_lock] SET owner_id = NULL, lease_until = ? "
+            + "WHERE job_name = ? AND owner_id = ? AND fencing_token = ?";
+
+    private static final String INTERRUPTED_RUN = "SELECT COUNT(*) FROM [dbo].[scheduler_lock] "
+            + "WHERE job_name = ? AND run_key = ? AND run_completed = ? AND (owner_id IS NULL OR lease_until < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final ScheduledExecutorService heartbeat;
+
+    // Jobs whose lock row is known to exist
+    private final Set<String> knownJobs = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public SchedulerLockService(JdbcTemplate jdbcTemplate,
+                                @Value("${campaign.scheduler.node-id:}") String nodeId,
+                                @Value("${campaign.scheduler.lock.lease-ms:300000}") long leaseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Unique per instance even when several share a JVM
+        this.nodeId = nodeId.isEmpty()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+        this.leaseMillis = leaseMillis;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduler-lock-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return Identity of this instance as written to scheduler_lock.owner_id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Take the lease of a job unless another node holds it
+     *
+     * @param jobName Job name
+     * @return Lease, renewed in the background until released, or null if the job is held elsewhere
+     */
+    public Lease tryAcquire(String jobName) {
+        ensureLockRow(jobName);
+
+        long now = System.currentTimeMillis();
+        if (jdbcTemplate.update(ACQUIRE, nodeId, new Timestamp(now + leaseMillis), jobName, new Timestamp(now)) == 0) {
+            log.debug("Scheduler lock {} is held by another node", jobName);
+            return null;
+        }
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_LOCK, jobName, nodeId);
+        if (rows.isEmpty()) {
+            // Expired and taken over between the two statements
+            return null;
+        }
+
+        Map<String, Object> row = rows.get(0);
+        Lease lease = new Lease(jobName, ((Number) row.get("fencing_token")).longValue(),
+                (String) row.get("run_key"), (String) row.get("run_checkpoint"),
+                Boolean.TRUE.equals(row.get("run_completed")));
+        long period = Math.max(leaseMillis / 3, 1);
+        lease.renewal = heartbeat.scheduleAtFixedRate(lease::heartbeat, period, period, TimeUnit.MILLISECONDS);
+
+        log.info("Acquired scheduler lock {} with fencing token {} on {}", jobName, lease.fencingToken, nodeId);
+        return lease;
+    }
+
+    /**
+     * Check whether a run of a job was started but neither completed nor is still held
+     *
+     * @param jobName Job name
+     * @param runKey Run to check, e.g. the week it belongs to
+     * @return True if a node should take the job over and resume the run
+     */
+    public boolean hasInterruptedRun(String jobName, String runKey) {
+        Integer count = jdbcTemplate.queryForObject(INTERRUPTED_RUN, Integer.class,
+                jobName, runKey, false, new Timestamp(System.currentTimeMillis()));
+        return count != null && count > 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+    }
+
+    private void ensureLockRow(String jobName) {
+        if (knownJobs.contains(jobName)) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT_LOCK, jobName, new Timestamp(0), true);
+        } catch (DuplicateKeyException e) {
+            // Created by another node
+        }
+        knownJobs.add(jobName);
+    }
+
+    /**
+     * Thrown when a guarded write finds that the lease has passed to another node
+     */
+    public static class LeaseLostException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public LeaseLostException(String jobName, long fencingToken) {
+            super("Scheduler lock " + jobName + " with fencing token " + fencingToken + " is no longer held");
+        }
+    }
+
+    /**
+     * One node's hold on a job, valid until released or lost
+     */
+    public final class Lease {
+        private final String jobName;
+        private final long fencingToken;
+        private final String runKey;
+        private final String checkpoint;
+        private final boolean runCompleted;
+        private volatile boolean lost;
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String jobName, long fencingToken, String runKey, String checkpoint, boolean runCompleted) {
+            this.jobName = jobName;
+            this.fencingToken = fencingToken;
+            this.runKey = runKey;
+            this.checkpoint = checkpoint;
+            this.runCompleted = runCompleted;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        /**
+         * @return False once a renewal found the lease taken over
+         */
+        public boolean isHeld() {
+            return !lost;
+        }
+
+        /**
+         * Checkpoint left by an interrupted run
+         *
+         * @param runKey Run being started
+         * @return Checkpoint of that run as of acquisition, or null if it was not started or has completed
+         */
+        public String getCheckpoint(String runKey) {
+            return runKey.equals(this.runKey) && !runCompleted ? checkpoint : null;
+        }
+
+        /**
+         * @param runKey Run being started
+         * @return True if that run had already completed when the lease was acquired
+         */
+        public boolean isCompleted(String runKey) {
+            return runKey.equals(this.runKey) && runCompleted;
+        }
+
+        /**
+         * Extend the lease, failing if it is no longer held
+         * Commits with the caller's transaction, so the caller's writes are fenced
+         *
+         * @throws LeaseLostException if another node holds the lease
+         */
+        public void renew() {
+            long now = System.currentTimeMillis();
+            if (jdbcTemplate.update(RENEW, new Timestamp(now + leaseMillis), jobName, nodeId, fencingToken) == 0) {
+                lost = true;
+                throw new LeaseLostException(jobName, fencingToken);
+            }
+        }
+
+        /**
+         * Record progress of a run and extend the lease
+         * Commits with the caller's transaction, so the checkpoint matches the work it covers
+         *
+         * @param runKey Run in progress
+         * @param value Checkpoint to resume after
+         * @throws LeaseLostException if another node holds the lease
+         */
+        public void checkpoint(String runKey, String value) {
+            update(runKey, value, false);
+        }
+
+        /**
+         * Mark a run as completed and extend the lease
+         *
+         * @throws LeaseLostException if another node holds the lease
+         */
+        public void complete(String runKey) {
+            update(runKey, null, true);
+        }
+
+        /**
+         * Check without writing that the lease is still held
+         * For concurrent transactions that must not serialize on the lock row
+         *
+         * @throws LeaseLostException if another node holds the lease or it has expired
+         */
+        public void verify() {
+            Integer count = jdbcTemplate.queryForObject(VERIFY, Integer.class,
+                    jobName, nodeId, fencingToken, new Timestamp(System.currentTimeMillis()));
+            if (lost || count == null || count == 0) {
+                lost = true;
+                throw new LeaseLostException(jobName, fencingToken);
+            }
+        }
+
+        /**
+         * Stop renewing and give the lease up so another node can take the job at once
+         */
+        public void release() {
+            ScheduledFuture<?> future = renewal;
+            if (future != null) {
+                future.cancel(false);
+            }
+            try {
+                if (jdbcTemplate.update(RELEASE, new Timestamp(System.currentTimeMillis()),
+                        jobName, nodeId, fencingToken) > 0) {
+                    log.info("Released scheduler lock {} with fencing token {}", jobName, fencingToken);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to release scheduler lock {}, it expires with its lease", jobName, e);
+            }
+        }
+
+        private void update(String runKey, String value, boolean completed) {
+            long now = System.currentTimeMillis();
+            if (jdbcTemplate.update(CHECKPOINT, runKey, value, completed, new Timestamp(now + leaseMillis),
+                    jobName, nodeId, fencingToken) == 0) {
+                lost = true;
+                throw new LeaseLostException(jobName, fencingToken);
+            }
+        }
+
+        private void heartbeat() {
+            try {
+                renew();
+            } catch (LeaseLostException e) {
+                log.warn(e.getMessage());
+                renewal.cancel(false);
+            } catch (RuntimeException e) {
+                // Try again on the next beat; the lease expires if the database stays unreachable
+                log.warn("Failed to renew scheduler lock {}", jobName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.usbank.corp.dcr.api.cache.CampaignPayloadCache;
+import com.usbank.corp.dcr.api.cache.EligibleCampaignCache;
+import com.usbank.corp.dcr.api.cache.UserWeeklyStateCache;
+import com.usbank.corp.dcr.api.model.SelectionOutcome;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Metrics of the campaign selection path
+ *
+ * Every meter is registered up front with a fixed set of tag values, so the
+ * request path only records into meters it already holds and the number of
+ * time series cannot grow with companies, users or campaigns.
+ *
+ * - campaign.selection: whole /next request, tagged by outcome
+ * - campaign.selection.stage: time per stage of the selection, user_selection
+ *   is the combined query that replaces the separate reads on a cache miss
+ * - campaign.selection.outcome: requests and bulk users by outcome
+ * - campaign.selection.db.calls: database round trips per /next request
+ * - cache.gets / cache.size: hits and misses of the selection and payload caches
+ * - viewer.filter.*: answers, false positives and memory of the weekly viewer filter
+ * - history.writer.*: rows waiting in the history writer and rows it dropped
+ *
+ * Database calls are counted on the request thread; counting outside a
+ * traced request is harmless, the count is reset when the next one starts.
+ */
+@Component
+public class SelectionMetrics {
+
+    static final String PREFIX = "campaign.selection";
+
+    private static final ThreadLocal<int[]> DATABASE_CALLS = ThreadLocal.withInitial(() -> new int[1]);
+
+    public enum Stage {
+        USER_STATE("user_state"),
+        USER_SELECTION("user_selection"),
+        ELIGIBLE_CAMPAIGNS("eligible_campaigns"),
+        VIEW_COUNTS("view_counts"),
+        CAPPING_FILTER("capping_filter"),
+        SELECTION("selection"),
+        STATISTICS("statistics");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<SelectionOutcome, Timer> requestTimers = new EnumMap<>(SelectionOutcome.class);
+    private final Map<SelectionOutcome, Counter> outcomeCounters = new EnumMap<>(SelectionOutcome.class);
+    private final DistributionSummary databaseCalls;
+
+    @Autowired
+    public SelectionMetrics(MeterRegistry registry, EligibleCampaignCache eligibleCampaignCache,
+                            UserWeeklyStateCache userWeeklyStateCache, CampaignPayloadCache campaignPayloadCache,
+                            WeeklyViewerFilter weeklyViewerFilter, UserCampaignHistoryWriter historyWriter) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder(PREFIX + ".stage")
+                    .description("Time spent in one stage of campaign selection")
+                    .tag("stage", stage.tag)
+                    .register(registry));
+        }
+        for (SelectionOutcome outcome : SelectionOutcome.values()) {
+            requestTimers.put(outcome, Timer.builder(PREFIX)
+                    .description("Time to answer a next campaign request")
+                    .tag("outcome", outcome.getTag())
+                    .register(registry));
+            outcomeCounters.put(outcome, Counter.builder(PREFIX + ".outcome")
+                    .description("Campaign selections by outcome, bulk requests count each user")
+                    .tag("outcome", outcome.getTag())
+                    .register(registry));
+        }
+        databaseCalls = DistributionSummary.builder(PREFIX + ".db.calls")
+                .description("Database round trips per next campaign request")
+                .register(registry);
+
+        bindCache(registry, "eligible_campaigns", eligibleCampaignCache,
+                EligibleCampaignCache::getHitCount, EligibleCampaignCache::getMissCount, EligibleCampaignCache::size);
+        bindCache(registry, "user_weekly_state", userWeeklyStateCache,
+                UserWeeklyStateCache::getHitCount, UserWeeklyStateCache::getMissCount, UserWeeklyStateCache::size);
+        bindCache(registry, "campaign_payload", campaignPayloadCache,
+                CampaignPayloadCache::getHitCount, CampaignPayloadCache::getMissCount, CampaignPayloadCache::size);
+        bindViewerFilter(registry, weeklyViewerFilter);
+        bindHistoryWriter(registry, historyWriter);
+    }
+
+    /**
+     * Count one database round trip for the request running on this thread
+     */
+    public static void countDatabaseCall() {
+        DATABASE_CALLS.get()[0]++;
+    }
+
+    /**
+     * Start tracing a request on this thread
+     *
+     * @return Start time to pass to finishRequest
+     */
+    public long startRequest() {
+        DATABASE_CALLS.get()[0] = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the duration, outcome and database calls of a traced request
+     */
+    public void finishRequest(long startNanos, SelectionOutcome outcome) {
+        requestTimers.get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        outcomeCounters.get(outcome).increment();
+        databaseCalls.record(DATABASE_CALLS.get()[0]);
+    }
+
+    /**
+     * Record the outcome of one user of a bulk request
+     */
+    public void recordOutcome(SelectionOutcome outcome) {
+        outcomeCounters.get(outcome).increment();
+    }
+
+    /**
+     * Record a stage that started at the given time and ended now
+     *
+     * @return The current time, the start of the next stage
+     */
+    public long recordStage(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageTimers.get(stage).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Run one stage and record its duration
+     */
+    public <T> T timeStage(Stage stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordStage(stage, start);
+        }
+    }
+
+    private static void bindViewerFilter(MeterRegistry registry, WeeklyViewerFilter filter) {
+        FunctionCounter.builder("viewer.filter.checks", filter, WeeklyViewerFilter::getNegativeCount)
+                .description("Viewer filter checks by answer, negatives skip the history lookup")
+                .tag("result", "negative")
+                .register(registry);
+        FunctionCounter.builder("viewer.filter.checks", filter, WeeklyViewerFilter::getPositiveCount)
+                .description("Viewer filter checks by answer, negatives skip the history lookup")
+                .tag("result", "positive")
+                .register(registry);
+        FunctionCounter.builder("viewer.filter.false.positives", filter, WeeklyViewerFilter::getFalsePositiveCount)
+                .description("Positive answers whose history lookup found nothing this week")
+                .register(registry);
+        Gauge.builder("viewer.filter.false.positive.rate", filter, WeeklyViewerFilter::getObservedFalsePositiveRate)
+                .description("False positives over all users without history this week")
+                .tag("kind", "observed")
+                .register(registry);
+        Gauge.builder("viewer.filter.false.positive.rate", filter, WeeklyViewerFilter::getExpectedFalsePositiveRate)
+                .description("False positive rate expected from the share of bits set")
+                .tag("kind", "expected")
+                .register(registry);
+        Gauge.builder("viewer.filter.memory", filter, WeeklyViewerFilter::getMemoryBytes)
+                .description("Memory held by the viewer filter's bit array")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static void bindHistoryWriter(MeterRegistry registry, UserCampaignHistoryWriter writer) {
+        Gauge.builder("history.writer.backlog", writer, UserCampaignHistoryWriter::pendingCount)
+                .description("History rows queued or being written, grows while writes are failing")
+                .register(registry);
+        FunctionCounter.builder("history.writer.dropped", writer, UserCampaignHistoryWriter::getDroppedCount)
+                .description("History rows dropped after failing to write")
+                .register(registry);
+    }
+
+    private static <C> void bindCache(MeterRegistry registry, String name, C cache,
+            ToDoubleFunction<C> hits, ToDoubleFunction<C> misses, ToDoubleFunction<C> size) {
+        FunctionCounter.builder("cache.gets", cache, hits)
+                .description("Cache lookups by result")
+                .tags("cache", name, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", cache, misses)
+                .description("Cache lookups by result")
+                .tags("cache", name, "result", "miss")
+                .register(registry);
+        Gauge.builder("cache.size", cache, size)
+                .description("Number of entries in the cache")
+                .tag("cache", name)
+                .register(registry);
+    }
+}
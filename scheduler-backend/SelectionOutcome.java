@@ -0,0 +1,27 @@
+package com.usbank.corp.dcr.api.model;
+
+/**
+ * How a request for the next campaign ended
+ */
+public enum SelectionOutcome {
+    SERVED("served"),
+    ALREADY_SEEN("already_seen"),
+    FORM_SUBMITTED("form_submitted"),
+    CAPPED("capped"),
+    NONE_ELIGIBLE("none_eligible"),
+    QUOTA_EXHAUSTED("quota_exhausted"),
+    ERROR("error");
+
+    private final String tag;
+
+    SelectionOutcome(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Value used for metric tags and reason headers
+     */
+    public String getTag() {
+        return tag;
+    }
+}
@@ -15,6 +15,14 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+/**
+ * One impression of a campaign shown to a user
+ * Only the current and previous week are kept here; older weeks are folded
+ * into user_campaign_history_summary by UserCampaignHistoryCompactor
+ * 
+ * The indexes are created by the DBA script in UserCampaignHistoryCompactor,
+ * aligned with the partition scheme, not declared here
+ */
 @Entity
 @Table(name = "user_campaign_history")
 @Data
@@ -35,15 +43,27 @@ public class UserCampaignHistory {
     @Temporal(TemporalType.TIMESTAMP)
     private Date viewDate;
     
+    // Monday-based week number of view_date, as RotationUtils.getEpochWeek; the partitioning column
+    @Column(name = "epoch_week", insertable = false, updatable = false,
+            columnDefinition = "AS ((DATEDIFF(day, CONVERT(datetime, '19700101', 112), view_date) + 3) / 7) PERSISTED")
+    private Integer epochWeek;
+    
     @Column(name = "has_clicked_learn_more")
     private Boolean hasClickedLearnMore = false;
     
     @Column(name = "has_submitted_form")
     private Boolean hasSubmittedForm = false;
+    
+    // Database time the row was inserted, lets other instances pick up new viewers incrementally
+    @Column(name = "recorded_at", insertable = false, updatable = false,
+            columnDefinition = "datetime2 DEFAULT SYSDATETIME()")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date recordedAt;
 }
 
 package com.usbank.corp.dcr.api.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -88,7 +108,8 @@ public interface UserCampaignHistoryRepository extends JpaRepository<UserCampaig
                                                       @Param("startDate") Date startDate);
     
     /**
-     * Count how many times a user has viewed a specific campaign
+     * Count how many times a user has viewed a specific campaign in the weeks not yet compacted
+     * user_campaign_view_count holds the total
      * 
      * @param userId User ID
      * @param campaignId Campaign ID
@@ -111,4 +132,16 @@ public interface UserCampaignHistoryRepository extends JpaRepository<UserCampaig
     Optional<UserCampaignHistory> findUserHistoryInDateRange(@Param("userId") String userId,
                                                           @Param("startDate") Date startDate,
                                                           @Param("endDate") Date endDate);
-}
\ No newline at end of file
+    
+    /**
+     * Find the history of many users on or after a given date
+     * 
+     * @param userIds User IDs
+     * @param startDate Start date to search from
+     * @return History rows, most recent first
+     */
+    @Query("SELECT h FROM UserCampaignHistory h WHERE h.userId IN :userIds AND h.viewDate >= :startDate " +
+           "ORDER BY h.viewDate DESC")
+    List<UserCampaignHistory> findRecentHistoryForUsers(@Param("userIds") Collection<String> userIds,
+                                                        @Param("startDate") Date startDate);
+}
@@ -0,0 +1,50 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Raw history row of a compacted week
+ * Only written when campaign.history.compaction.archive is enabled; mapped
+ * so the table is part of the schema
+ */
+@Entity
+@Table(name = "user_campaign_history_archive",
+       indexes = @Index(name = "ix_history_archive_epoch_week", columnList = "epoch_week"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCampaignHistoryArchive {
+    @Id
+    private String id;
+    
+    @Column(nullable = false, name = "user_id")
+    private String userId;
+    
+    @Column(nullable = false, name = "campaign_id")
+    private String campaignId;
+    
+    @Column(name = "view_date", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date viewDate;
+    
+    @Column(nullable = false, name = "epoch_week")
+    private Integer epochWeek;
+    
+    @Column(name = "has_clicked_learn_more")
+    private Boolean hasClickedLearnMore;
+    
+    @Column(name = "has_submitted_form")
+    private Boolean hasSubmittedForm;
+}
@@ -0,0 +1,290 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.LeaseLostException;
+import com.usbank.corp.dcr.api.utils.RotationUtils;
+
+/**
+ * Rolling compaction of user_campaign_history
+ *
+ * Keeps the history table bounded to the hot weeks (the current and the
+ * previous week by default). Every closed week is folded into
+ * user_campaign_history_summary, one row per (user, campaign) with the number
+ * of views and whether the user clicked or submitted, optionally copied to
+ * user_campaign_history_archive, and then dropped. Display capping reads
+ * user_campaign_view_count and selection only looks at the current week, so
+ * neither depends on the dropped rows.
+ *
+ * Without partitioning a week is folded and deleted in chunks, one
+ * transaction each, so a run can stop anywhere without counting a row
+ * twice. With campaign.history.partitioning.enabled the table is expected
+ * on a partition scheme over epoch_week, created once by the DBA:
+ *
+ *   CREATE PARTITION FUNCTION pf_user_campaign_history_week (int) AS RANGE RIGHT FOR VALUES (...);
+ *   CREATE PARTITION SCHEME ps_user_campaign_history_week
+ *       AS PARTITION pf_user_campaign_history_week ALL TO ([PRIMARY]);
+ *
+ * with the primary key on (id, epoch_week) and every index created on the
+ * same scheme, so it is aligned and switches out with its partition:
+ *
+ *   CREATE INDEX ix_history_user ON [dbo].[user_campaign_history] (user_id, view_date)
+ *       ON ps_user_campaign_history_week (epoch_week);
+ *   CREATE INDEX ix_history_epoch_week ON [dbo].[user_campaign_history] (epoch_week, id)
+ *       ON ps_user_campaign_history_week (epoch_week);
+ *   CREATE INDEX ix_history_recorded_at ON [dbo].[user_campaign_history] (recorded_at)
+ *       ON ps_user_campaign_history_week (epoch_week);
+ *
+ * Without partitioning the same indexes are created without the ON clause.
+ * The entity declares none, since Hibernate would put them on PRIMARY. The
+ * partition of a closed week is then folded in one statement, truncated and
+ * merged away, and boundaries for the coming weeks are split ahead of time.
+ *
+ * Only the instance holding the compaction scheduler lock runs, and every
+ * transaction renews that lease first, so an instance that lost it cannot
+ * fold a chunk the next holder folds again. A run that dies is resumed by
+ * the next one, since folded rows are gone from the table.
+ */
+@Service
+public class UserCampaignHistoryCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(UserCampaignHistoryCompactor.class);
+
+    private static final String PARTITION_FUNCTION = "pf_user_campaign_history_week";
+    private static final String PARTITION_SCHEME = "ps_user_campaign_history_week";
+
+    static final String COMPACTION_JOB = "history-compaction";
+
+    private static final String OLDEST_CLOSED_WEEK = "SELECT MIN(epoch_week) FROM [dbo].[user_campaign_history] "
+            + "WHERE epoch_week < ?";
+
+    private static final String CHUNK_END = "SELECT MAX(id) FROM (SELECT TOP (?) id "
+            + "FROM [dbo].[user_campaign_history] WHERE epoch_week = ? ORDER BY id) chunk";
+
+    private static final String CHUNK = "epoch_week = ? AND id <= ?";
+    private static final String PARTITION = "$PARTITION." + PARTITION_FUNCTION + "(epoch_week) = ?";
+
+    private static final String FOLD_CHUNK = fold(CHUNK);
+    private static final String FOLD_PARTITION = fold(PARTITION);
+    private static final String ARCHIVE_CHUNK = archive(CHUNK);
+    private static final String ARCHIVE_PARTITION = archive(PARTITION);
+
+    private static final String DELETE_CHUNK = "DELETE FROM [dbo].[user_campaign_history] WHERE " + CHUNK;
+
+    private static final String COUNT_PARTITION = "SELECT COUNT_BIG(*) FROM [dbo].[user_campaign_history] WHERE "
+            + PARTITION;
+
+    private static final String PARTITION_NUMBER = "SELECT $PARTITION." + PARTITION_FUNCTION + "(?)";
+
+    // With RANGE RIGHT, boundary n is the first week of partition n + 1
+    private static final String BOUNDARY = "SELECT CAST(v.value AS int) FROM sys.partition_range_values v "
+            + "INNER JOIN sys.partition_functions f ON f.function_id = v.function_id "
+            + "WHERE f.name = '" + PARTITION_FUNCTION + "' AND v.boundary_id = ?";
+
+    private static final String BOUNDARIES = "SELECT CAST(v.value AS int) FROM sys.partition_range_values v "
+            + "INNER JOIN sys.partition_functions f ON f.function_id = v.function_id "
+            + "WHERE f.name = '" + PARTITION_FUNCTION + "' AND CAST(v.value AS int) BETWEEN ? AND ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RotationUtils rotationUtils;
+    private final SchedulerLockService schedulerLockService;
+
+    @Value("${campaign.history.compaction.hot-weeks:2}")
+    private int hotWeeks;
+
+    @Value("${campaign.history.compaction.chunk-size:5000}")
+    private int chunkSize;
+
+    // Copy raw rows to user_campaign_history_archive before dropping them
+    @Value("${campaign.history.compaction.archive:false}")
+    private boolean archive;
+
+    @Value("${campaign.history.partitioning.enabled:false}")
+    private boolean partitioned;
+
+    @Value("${campaign.history.partitioning.weeks-ahead:4}")
+    private int weeksAhead;
+
+    @Value("${campaign.history.partitioning.filegroup:PRIMARY}")
+    private String filegroup;
+
+    @Autowired
+    public UserCampaignHistoryCompactor(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                        RotationUtils rotationUtils, SchedulerLockService schedulerLockService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rotationUtils = rotationUtils;
+        this.schedulerLockService = schedulerLockService;
+    }
+
+    /**
+     * Fold every closed week out of the history table
+     */
+    @Scheduled(cron = "${campaign.history.compaction.cron:0 0 3 * * *}")
+    public void compact() {
+        Lease lease = schedulerLockService.tryAcquire(COMPACTION_JOB);
+        if (lease == null) {
+            log.info("History compaction is running on another instance, skipping");
+            return;
+        }
+
+        int currentWeek = rotationUtils.getEpochWeek(new Date());
+        int firstHotWeek = currentWeek - hotWeeks + 1;
+        long start = System.currentTimeMillis();
+
+        try {
+            if (partitioned) {
+                splitComingWeeks(currentWeek);
+            }
+
+            long folded = 0;
+            Integer week;
+            while ((week = jdbcTemplate.queryForObject(OLDEST_CLOSED_WEEK, Integer.class, firstHotWeek)) != null) {
+                long rows = partitioned ? compactPartition(week, firstHotWeek, lease) : compactWeek(week, lease);
+                log.info("Compacted {} history rows of epoch week {}", rows, week);
+                folded += rows;
+            }
+
+            log.info("Compacted {} history rows older than epoch week {} in {} ms",
+                    folded, firstHotWeek, System.currentTimeMillis() - start);
+        } catch (LeaseLostException e) {
+            log.warn("Lost the history compaction lock, stopping", e);
+        } catch (RuntimeException e) {
+            log.error("History compaction failed", e);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * Fold and delete one week chunk by chunk
+     *
+     * @return Rows compacted
+     */
+    private long compactWeek(int week, Lease lease) {
+        long total = 0;
+        while (true) {
+            Integer rows = transactionTemplate.execute(status -> {
+                lease.renew();
+                String lastId = jdbcTemplate.queryForObject(CHUNK_END, String.class, chunkSize, week);
+                if (lastId == null) {
+                    return 0;
+                }
+
+                jdbcTemplate.update(FOLD_CHUNK, week, lastId);
+                if (archive) {
+                    jdbcTemplate.update(ARCHIVE_CHUNK, week, lastId);
+                }
+                return jdbcTemplate.update(DELETE_CHUNK, week, lastId);
+            });
+
+            if (rows == 0) {
+                return total;
+            }
+            total += rows;
+        }
+    }
+
+    /**
+     * Fold the partition holding one week in a single statement and truncate it
+     * Falls back to chunked deletes while that partition still spans a hot week
+     *
+     * @return Rows compacted
+     */
+    private long compactPartition(int week, int firstHotWeek, Lease lease) {
+        Long compacted = transactionTemplate.execute(status -> {
+            lease.renew();
+
+            Integer partition = jdbcTemplate.queryForObject(PARTITION_NUMBER, Integer.class, week);
+            Integer upperBound = boundary(partition);
+            if (upperBound == null || upperBound > firstHotWeek) {
+                return null;
+            }
+
+            long rows = jdbcTemplate.queryForObject(COUNT_PARTITION, Long.class, partition);
+            jdbcTemplate.update(FOLD_PARTITION, partition);
+            if (archive) {
+                jdbcTemplate.update(ARCHIVE_PARTITION, partition);
+            }
+            jdbcTemplate.execute("TRUNCATE TABLE [dbo].[user_campaign_history] WITH (PARTITIONS (" + partition + "))");
+
+            // Closed weeks never receive rows again, merge the emptied partition into the one before it
+            Integer lowerBound = boundary(partition - 1);
+            if (lowerBound != null) {
+                jdbcTemplate.execute("ALTER PARTITION FUNCTION " + PARTITION_FUNCTION + "() MERGE RANGE (" + lowerBound + ")");
+            }
+            return rows;
+        });
+
+        return compacted != null ? compacted : compactWeek(week, lease);
+    }
+
+    /**
+     * @return Value of a boundary of the partition function, null if there is none with that number
+     */
+    private Integer boundary(int boundaryId) {
+        List<Integer> values = jdbcTemplate.queryForList(BOUNDARY, Integer.class, boundaryId);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Make sure the coming weeks each get their own partition before rows arrive
+     * Splitting an empty partition is a metadata-only change
+     */
+    private void splitComingWeeks(int currentWeek) {
+        int lastWeek = currentWeek + weeksAhead;
+        List<Integer> existing = jdbcTemplate.queryForList(BOUNDARIES, Integer.class, currentWeek, lastWeek);
+
+        for (int week = currentWeek; week <= lastWeek; week++) {
+            if (!existing.contains(week)) {
+                jdbcTemplate.execute("ALTER PARTITION SCHEME " + PARTITION_SCHEME + " NEXT USED [" + filegroup + "]");
+                jdbcTemplate.execute("ALTER PARTITION FUNCTION " + PARTITION_FUNCTION + "() SPLIT RANGE (" + week + ")");
+                log.info("Added history partition for epoch week {}", week);
+            }
+        }
+    }
+
+    private static String fold(String where) {
+        return "MERGE [dbo].[user_campaign_history_summary] WITH (HOLDLOCK) AS t "
+                + "USING (SELECT user_id, campaign_id, COUNT(*) AS view_count, "
+                + "MAX(CASE WHEN has_clicked_learn_more = 1 THEN 1 ELSE 0 END) AS clicked, "
+                + "MAX(CASE WHEN has_submitted_form = 1 THEN 1 ELSE 0 END) AS submitted, "
+                + "MIN(view_date) AS first_view_date, MAX(view_date) AS last_view_date, MAX(epoch_week) AS epoch_week "
+                + "FROM [dbo].[user_campaign_history] WHERE " + where + " "
+                + "GROUP BY user_id, campaign_id) AS s "
+                + "ON t.user_id = s.user_id AND t.campaign_id = s.campaign_id "
+                + "WHEN MATCHED THEN UPDATE SET view_count = t.view_count + s.view_count, "
+                + "has_clicked_learn_more = CASE WHEN s.clicked = 1 THEN 1 ELSE t.has_clicked_learn_more END, "
+                + "has_submitted_form = CASE WHEN s.submitted = 1 THEN 1 ELSE t.has_submitted_form END, "
+                + "first_view_date = CASE WHEN s.first_view_date < t.first_view_date "
+                + "    THEN s.first_view_date ELSE t.first_view_date END, "
+                + "last_view_date = CASE WHEN s.last_view_date > t.last_view_date "
+                + "    THEN s.last_view_date ELSE t.last_view_date END, "
+                + "compacted_through_week = CASE WHEN s.epoch_week > t.compacted_through_week "
+                + "    THEN s.epoch_week ELSE t.compacted_through_week END "
+                + "WHEN NOT MATCHED THEN INSERT (user_id, campaign_id, view_count, has_clicked_learn_more, "
+                + "has_submitted_form, first_view_date, last_view_date, compacted_through_week) "
+                + "VALUES (s.user_id, s.campaign_id, s.view_count, s.clicked, s.submitted, "
+                + "s.first_view_date, s.last_view_date, s.epoch_week);";
+    }
+
+    private static String archive(String where) {
+        return "INSERT INTO [dbo].[user_campaign_history_archive] "
+                + "(id, user_id, campaign_id, view_date, epoch_week, has_clicked_learn_more, has_submitted_form) "
+                + "SELECT id, user_id, campaign_id, view_date, epoch_week, has_clicked_learn_more, has_submitted_form "
+                + "FROM [dbo].[user_campaign_history] WHERE " + where;
+    }
+}
@@ -0,0 +1,90 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A user's compacted history of one campaign
+ * Accumulates the impressions of every closed week folded out of
+ * user_campaign_history, so the raw rows of those weeks can be dropped
+ */
+@Entity
+@Table(name = "user_campaign_history_summary")
+@IdClass(UserCampaignHistorySummary.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCampaignHistorySummary {
+    @Id
+    @Column(nullable = false, name = "user_id")
+    private String userId;
+    
+    @Id
+    @Column(nullable = false, name = "campaign_id")
+    private String campaignId;
+    
+    @Column(nullable = false, name = "view_count")
+    private Long viewCount;
+    
+    @Column(name = "has_clicked_learn_more")
+    private Boolean hasClickedLearnMore = false;
+    
+    @Column(name = "has_submitted_form")
+    private Boolean hasSubmittedForm = false;
+    
+    @Column(name = "first_view_date")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date firstViewDate;
+    
+    @Column(name = "last_view_date")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastViewDate;
+    
+    // Latest epoch week folded into this row
+    @Column(nullable = false, name = "compacted_through_week")
+    private Integer compactedThroughWeek;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private String userId;
+        private String campaignId;
+    }
+}
+
+package com.usbank.corp.dcr.api.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.usbank.corp.dcr.api.entity.UserCampaignHistorySummary;
+
+@Repository
+public interface UserCampaignHistorySummaryRepository 
+        extends JpaRepository<UserCampaignHistorySummary, UserCampaignHistorySummary.Key> {
+    
+    /**
+     * Find the compacted history of a user
+     * 
+     * @param userId User ID
+     * @return One summary per campaign the user saw before the hot weeks
+     */
+    List<UserCampaignHistorySummary> findByUserId(String userId);
+}
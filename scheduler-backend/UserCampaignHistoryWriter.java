@@ -0,0 +1,515 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
+
+/**
+ * Write-behind pipeline for user_campaign_history
+ *
+ * Impressions are appended to a bounded in-memory queue and written by a
+ * single writer thread with JDBC batch inserts, together with the matching
+ * view counter increments, one transaction per batch. A batch is written
+ * once it reaches the configured size or the oldest row has waited for the
+ * linger time. When the queue is full, callers wait briefly and then write
+ * their row synchronously, so memory stays bounded under overload.
+ *
+ * Rows stay visible through findPending and pendingViewCounts until their
+ * batch has committed, so reads never miss an impression.
+ *
+ * A batch that fails for any other reason than a constraint violation, such
+ * as the database being unreachable, stays in flight and is retried with
+ * exponential backoff while new rows keep queueing behind it. Only a
+ * constraint violation makes the writer retry the batch row by row, and only
+ * the rows that violate a constraint themselves are dropped. Rows still
+ * failing when the writer stops, and synchronous writes that fail, are
+ * dropped as well; getDroppedCount and pendingCount expose both.
+ */
+@Service
+public class UserCampaignHistoryWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(UserCampaignHistoryWriter.class);
+
+    private static final String INSERT_HISTORY = "INSERT INTO [dbo].[user_campaign_history] "
+            + "(id, user_id, campaign_id, view_date, has_clicked_learn_more, has_submitted_form) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INCREMENT_VIEW_COUNT = "MERGE [dbo].[user_campaign_view_count] WITH (HOLDLOCK) AS t "
+            + "USING (SELECT ? AS user_id, ? AS campaign_id, ? AS view_date) AS s "
+            + "ON t.user_id = s.user_id AND t.campaign_id = s.campaign_id "
+            + "WHEN MATCHED THEN UPDATE SET view_count = t.view_count + 1, last_view_date = s.view_date "
+            + "WHEN NOT MATCHED THEN INSERT (user_id, campaign_id, view_count, last_view_date) "
+            + "VALUES (s.user_id, s.campaign_id, 1, s.view_date);";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final int capacity;
+    private final long offerTimeoutNanos;
+    private final long retryInitialNanos;
+    private final long retryMaxNanos;
+    private final long updateWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition batchDone = lock.newCondition();
+    private final Condition stopped = lock.newCondition();
+
+    // All guarded by lock
+    private final ArrayDeque<UserCampaignHistory> queued = new ArrayDeque<>();
+    private final List<UserCampaignHistory> inFlight = new ArrayList<>();
+    private final Map<String, List<UserCampaignHistory>> pendingByUser = new HashMap<>();
+    private boolean running;
+    private boolean flushRequested;
+
+    private Thread writerThread;
+
+    private final LongAdder dropped = new LongAdder();
+
+    @Autowired
+    public UserCampaignHistoryWriter(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${campaign.history.writer.batch-size:500}") int batchSize,
+                                     @Value("${campaign.history.writer.linger-ms:50}") long lingerMillis,
+                                     @Value("${campaign.history.writer.capacity:20000}") int capacity,
+                                     @Value("${campaign.history.writer.offer-timeout-ms:100}") long offerTimeoutMillis,
+                                     @Value("${campaign.history.writer.retry-initial-ms:100}") long retryInitialMillis,
+                                     @Value("${campaign.history.writer.retry-max-ms:30000}") long retryMaxMillis,
+                                     @Value("${campaign.history.writer.update-wait-ms:2000}") long updateWaitMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.capacity = capacity;
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        this.retryInitialNanos = TimeUnit.MILLISECONDS.toNanos(retryInitialMillis);
+        this.retryMaxNanos = TimeUnit.MILLISECONDS.toNanos(retryMaxMillis);
+        this.updateWaitNanos = TimeUnit.MILLISECONDS.toNanos(updateWaitMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        writerThread = new Thread(this::drainLoop, "user-campaign-history-writer");
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer once everything still queued has been written
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            stopped.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        log.info("History writer stopped, {} rows left unwritten", pendingCount());
+    }
+
+    /**
+     * Queue a new history row for writing
+     * Assigns the row id; falls back to a synchronous write if the queue stays full
+     *
+     * @param history New history row
+     */
+    public void append(UserCampaignHistory history) {
+        history.setId(UUID.randomUUID().toString());
+
+        lock.lock();
+        try {
+            long waitNanos = offerTimeoutNanos;
+            while (running && queued.size() >= capacity) {
+                if (waitNanos <= 0) {
+                    break;
+                }
+                waitNanos = notFull.awaitNanos(waitNanos);
+            }
+
+            if (running && queued.size() < capacity) {
+                queued.addLast(history);
+                pendingByUser.computeIfAbsent(history.getUserId(), id -> new ArrayList<>(2)).add(history);
+                notEmpty.signal();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+
+        // Back-pressure: the caller pays for its own write
+        log.warn("History write queue full, writing row for user {} synchronously", history.getUserId());
+        List<UserCampaignHistory> failed = write(Collections.singletonList(history));
+        if (!failed.isEmpty()) {
+            drop(failed);
+        }
+    }
+
+    /**
+     * Find the user's most recent unwritten history row on or after a date
+     *
+     * @param userId User identifier
+     * @param since Earliest view date
+     * @return Most recent pending row, if any
+     */
+    public Optional<UserCampaignHistory> findPending(String userId, Date since) {
+        lock.lock();
+        try {
+            UserCampaignHistory latest = null;
+            for (UserCampaignHistory history : pendingByUser.getOrDefault(userId, Collections.emptyList())) {
+                if (!history.getViewDate().before(since)
+                        && (latest == null || !history.getViewDate().before(latest.getViewDate()))) {
+                    latest = history;
+                }
+            }
+            return Optional.ofNullable(latest);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count the user's unwritten views per campaign
+     *
+     * @param userId User identifier
+     * @return Map of campaign id to pending view count
+     */
+    public Map<String, Long> pendingViewCounts(String userId) {
+        lock.lock();
+        try {
+            List<UserCampaignHistory> pending = pendingByUser.get(userId);
+            if (pending == null) {
+                return Collections.emptyMap();
+            }
+
+            Map<String, Long> counts = new HashMap<>();
+            for (UserCampaignHistory history : pending) {
+                counts.merge(history.getCampaignId(), 1L, Long::sum);
+            }
+            return counts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the user's unwritten rows for a campaign have been written
+     * The writer is asked to write what is queued without waiting for the linger time
+     *
+     * @param userId User identifier
+     * @param campaignId Campaign identifier
+     * @param timeoutNanos Longest time to wait
+     * @return true once no row is queued or being written, false if one still is at the timeout
+     */
+    public boolean awaitWritten(String userId, String campaignId, long timeoutNanos) {
+        lock.lock();
+        try {
+            long waitNanos = timeoutNanos;
+            while (hasPending(userId, campaignId)) {
+                if (waitNanos <= 0) {
+                    return false;
+                }
+                flushRequested = true;
+                notEmpty.signal();
+                waitNanos = batchDone.awaitNanos(waitNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply a change to a row that has not been written yet
+     * If the row is part of the batch being written, waits for that batch to
+     * commit and reports false so the caller updates the database row instead.
+     * The wait is bounded by campaign.history.writer.update-wait-ms, since a
+     * failing batch is retried for as long as the database is unreachable;
+     * the caller then finds no row and reports the failure.
+     *
+     * @param userId User identifier
+     * @param campaignId Campaign identifier
+     * @param change Change to apply
+     * @return true if a queued row was changed, false if the caller must update the database
+     */
+    public boolean updatePending(String userId, String campaignId, Consumer<UserCampaignHistory> change) {
+        lock.lock();
+        try {
+            long waitNanos = updateWaitNanos;
+            while (true) {
+                UserCampaignHistory match = null;
+                for (UserCampaignHistory history : pendingByUser.getOrDefault(userId, Collections.emptyList())) {
+                    if (campaignId.equals(history.getCampaignId())) {
+                        match = history;
+                    }
+                }
+
+                if (match == null) {
+                    return false;
+                }
+                if (!inFlight.contains(match)) {
+                    change.accept(match);
+                    return true;
+                }
+                if (waitNanos <= 0) {
+                    log.warn("History row for user {} on campaign {} is still being written, not updating it",
+                            userId, campaignId);
+                    return false;
+                }
+                waitNanos = batchDone.awaitNanos(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of rows dropped after failing to write
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Number of rows queued or being written
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return queued.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            List<UserCampaignHistory> batch = takeBatch();
+            if (batch == null) {
+                return;
+            }
+
+            List<UserCampaignHistory> failed = write(batch);
+            long backoffNanos = retryInitialNanos;
+            while (!failed.isEmpty()) {
+                boolean stopping = !awaitRetry(backoffNanos);
+                log.warn("Retrying {} history rows after a failed write", failed.size());
+                failed = write(failed);
+                if (stopping && !failed.isEmpty()) {
+                    drop(failed);
+                    break;
+                }
+                backoffNanos = Math.min(backoffNanos * 2, retryMaxNanos);
+            }
+
+            lock.lock();
+            try {
+                for (UserCampaignHistory history : batch) {
+                    List<UserCampaignHistory> pending = pendingByUser.get(history.getUserId());
+                    if (pending != null) {
+                        pending.remove(history);
+                        if (pending.isEmpty()) {
+                            pendingByUser.remove(history.getUserId());
+                        }
+                    }
+                }
+                inFlight.clear();
+                batchDone.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait for a full batch or the linger time, whichever comes first
+     *
+     * @return Next batch, or null once stopped and drained
+     */
+    private List<UserCampaignHistory> takeBatch() {
+        lock.lock();
+        try {
+            while (queued.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+
+            long lingerLeft = lingerNanos;
+            while (running && !flushRequested && queued.size() < batchSize && lingerLeft > 0) {
+                lingerLeft = notEmpty.awaitNanos(lingerLeft);
+            }
+            flushRequested = false;
+
+            int size = Math.min(batchSize, queued.size());
+            for (int i = 0; i < size; i++) {
+                inFlight.add(queued.pollFirst());
+            }
+            return new ArrayList<>(inFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait before retrying a failed batch
+     *
+     * @return false if the writer is stopping, so the retry is the last one
+     */
+    private boolean awaitRetry(long backoffNanos) {
+        lock.lock();
+        try {
+            long waitNanos = backoffNanos;
+            while (running && waitNanos > 0) {
+                waitNanos = stopped.awaitNanos(waitNanos);
+            }
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write rows in one transaction
+     * A constraint violation is narrowed down row by row and the violating
+     * rows are dropped; any other failure leaves the rows to be retried
+     *
+     * @return Rows not written that should be retried
+     */
+    private List<UserCampaignHistory> write(List<UserCampaignHistory> batch) {
+        try {
+            transactionTemplate.execute(status -> {
+                insertBatch(batch);
+                return null;
+            });
+            return Collections.emptyList();
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                log.error("History row {} for user {} violates a constraint, dropping it",
+                        batch.get(0).getId(), batch.get(0).getUserId(), e);
+                dropped.increment();
+                return Collections.emptyList();
+            }
+
+            // Isolate the offending rows by writing the batch one row at a time
+            log.error("Batch of {} history rows violates a constraint, retrying row by row", batch.size(), e);
+            List<UserCampaignHistory> failed = new ArrayList<>();
+            for (UserCampaignHistory history : batch) {
+                failed.addAll(write(Collections.singletonList(history)));
+            }
+            return failed;
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} history rows, keeping them for retry", batch.size(), e);
+            return batch;
+        }
+    }
+
+    // Caller holds lock
+    private boolean hasPending(String userId, String campaignId) {
+        for (UserCampaignHistory history : pendingByUser.getOrDefault(userId, Collections.emptyList())) {
+            if (campaignId.equals(history.getCampaignId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drop(List<UserCampaignHistory> failed) {
+        dropped.add(failed.size());
+        for (UserCampaignHistory history : failed) {
+            log.error("Dropping unwritten history row {} for user {} on campaign {}",
+                    history.getId(), history.getUserId(), history.getCampaignId());
+        }
+    }
+
+    private void insertBatch(List<UserCampaignHistory> batch) {
+        jdbcTemplate.batchUpdate(INSERT_HISTORY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                UserCampaignHistory history = batch.get(i);
+                ps.setString(1, history.getId());
+                ps.setString(2, history.getUserId());
+                ps.setString(3, history.getCampaignId());
+                ps.setTimestamp(4, new Timestamp(history.getViewDate().getTime()));
+                ps.setBoolean(5, Boolean.TRUE.equals(history.getHasClickedLearnMore()));
+                ps.setBoolean(6, Boolean.TRUE.equals(history.getHasSubmittedForm()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+
+        jdbcTemplate.batchUpdate(INCREMENT_VIEW_COUNT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                UserCampaignHistory history = batch.get(i);
+                ps.setString(1, history.getUserId());
+                ps.setString(2, history.getCampaignId());
+                ps.setTimestamp(3, new Timestamp(history.getViewDate().getTime()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package com.usbank.corp.dcr.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of campaign selection for one user of a bulk request
+ * Either campaign is set, or outcome and message explain why nothing was served
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCampaignResult {
+
+    private String userId;
+
+    private SelectionOutcome outcome;
+
+    private CampaignResponseDTO campaign;
+
+    private String message;
+}
@@ -10,6 +10,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.usbank.corp.dcr.api.cache.UserWeeklyState;
+import com.usbank.corp.dcr.api.cache.UserWeeklyStateCache;
 import com.usbank.corp.dcr.api.entity.CampaignMapping;
 import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
 import com.usbank.corp.dcr.api.exception.DataHandlingException;
@@ -29,14 +31,26 @@ public class UserCampaignService {
     private final CampaignRepository campaignRepository;
     private final UserCampaignHistoryRepository userCampaignHistoryRepository;
     private final RotationUtils rotationUtils;
+    private final UserWeeklyStateCache userWeeklyStateCache;
+    private final UserCampaignHistoryWriter historyWriter;
+    private final WeeklyViewerFilter weeklyViewerFilter;
+    private final CampaignQuotaCounters campaignQuotaCounters;
     
     @Autowired
     public UserCampaignService(CampaignRepository campaignRepository,
                              UserCampaignHistoryRepository userCampaignHistoryRepository,
-                             RotationUtils rotationUtils) {
+                             RotationUtils rotationUtils,
+                             UserWeeklyStateCache userWeeklyStateCache,
+                             UserCampaignHistoryWriter historyWriter,
+                             WeeklyViewerFilter weeklyViewerFilter,
+                             CampaignQuotaCounters campaignQuotaCounters) {
         this.campaignRepository = campaignRepository;
         this.userCampaignHistoryRepository = userCampaignHistoryRepository;
         this.rotationUtils = rotationUtils;
+        this.userWeeklyStateCache = userWeeklyStateCache;
+        this.historyWriter = historyWriter;
+        this.weeklyViewerFilter = weeklyViewerFilter;
+        this.campaignQuotaCounters = campaignQuotaCounters;
     }
     
     /**
@@ -52,40 +66,50 @@ public class UserCampaignService {
         Date weekEnd = rotationUtils.getWeekEndDate(currentDate);
         
         // Check for existing history in this week
-        Optional<UserCampaignHistory> userHistory = userCampaignHistoryRepository
-                .findUserHistoryInDateRange(userId, weekStart, weekEnd);
-        
-        if (!userHistory.isPresent()) {
-            // No history this week, user is eligible
+        UserWeeklyState userState = userWeeklyStateCache.getIfPresent(userId, weekStart);
+        if (userState == null && !weeklyViewerFilter.mightHaveViewed(userId, weekStart)) {
+            // No history this week as of the last filter refresh; not cached, so the
+            // next check sees a view from another instance once the filter has it
             return true;
         }
         
-        UserCampaignHistory history = userHistory.get();
-        
-        // If the user has submitted a form, they're not eligible for more campaigns this week
-        if (history.getHasSubmittedForm()) {
-            return false;
+        if (userState == null) {
+            Optional<UserCampaignHistory> history = historyWriter.findPending(userId, weekStart);
+            if (!history.isPresent()) {
+                history = userCampaignHistoryRepository.findUserHistoryInDateRange(userId, weekStart, weekEnd);
+            }
+            weeklyViewerFilter.recordLookup(weekStart, history.isPresent());
+            userState = userWeeklyStateCache.putLoaded(userId, UserWeeklyState.from(weekStart.getTime(), history));
         }
         
-        // If they've clicked "Learn More" but not submitted a form, they're eligible for one more view
-        if (history.getHasClickedLearnMore()) {
-            return true;
+        switch (userState.getEngagement()) {
+            case NONE:
+                // No history this week, user is eligible
+                return true;
+            case SUBMITTED:
+                // If the user has submitted a form, they're not eligible for more campaigns this week
+                return false;
+            case CLICKED:
+                // If they've clicked "Learn More" but not submitted a form, they're eligible for one more view
+                return true;
+            default:
+                // Otherwise, they've seen a campaign this week but not clicked "Learn More"
+                // They're not eligible for more campaigns
+                return false;
         }
-        
-        // Otherwise, they've seen a campaign this week but not clicked "Learn More"
-        // They're not eligible for more campaigns
-        return false;
     }
     
     /**
      * Record a campaign view for a user
+     * The impression is taken from the weekly quota counters like a served
+     * campaign, so it counts against the same exact cap; the campaign row is
+     * never written here
      * 
      * @param userId User identifier
      * @param campaignId Campaign identifier
      * @param currentDate Current date
      * @throws DataHandlingException if recording fails
      */
-    @Transactional
     public void recordCampaignView(String userId, String campaignId, Date currentDate) 
             throws DataHandlingException {
         
@@ -93,17 +117,12 @@ public class UserCampaignService {
                 .orElseThrow(() -> new DataHandlingException(HttpStatus.NOT_FOUND.toString(), 
                         "Campaign not found with id: " + campaignId));
         
-        // Apply view to campaign
-        boolean success = campaign.applyView(currentDate);
-        
-        if (!success) {
+        // Take one impression from the weekly quota
+        if (!campaign.isOpenForDisplay(currentDate) || !campaignQuotaCounters.tryAcquire(campaign, currentDate)) {
             throw new DataHandlingException(HttpStatus.BAD_REQUEST.toString(), 
                     "Campaign is not eligible for display");
         }
         
-        // Save updated campaign
-        campaignRepository.save(campaign);
-        
         // Create user history record
         UserCampaignHistory history = new UserCampaignHistory();
         history.setUserId(userId);
@@ -112,7 +131,10 @@ public class UserCampaignService {
         history.setHasClickedLearnMore(false);
         history.setHasSubmittedForm(false);
         
-        userCampaignHistoryRepository.save(history);
+        Date weekStart = rotationUtils.getWeekStartDate(currentDate);
+        weeklyViewerFilter.recordView(userId, weekStart);
+        historyWriter.append(history);
+        userWeeklyStateCache.recordView(userId, campaignId, weekStart);
         
         log.info("Recorded campaign view for user {} on campaign {}", userId, campaignId);
     }
@@ -126,6 +148,12 @@ public class UserCampaignService {
      */
     @Transactional
     public void recordLearnMoreClick(String userId, String campaignId) throws DataHandlingException {
+        if (historyWriter.updatePending(userId, campaignId, pending -> pending.setHasClickedLearnMore(true))) {
+            userWeeklyStateCache.recordLearnMoreClick(userId, campaignId);
+            log.info("Recorded Learn More click for user {} on pending view of campaign {}", userId, campaignId);
+            return;
+        }
+        
         Optional<UserCampaignHistory> historyOpt = userCampaignHistoryRepository
                 .findByCampaignIdAndUserId(campaignId, userId);
         
@@ -143,6 +171,7 @@ public class UserCampaignService {
         
         history.setHasClickedLearnMore(true);
         userCampaignHistoryRepository.save(history);
+        userWeeklyStateCache.recordLearnMoreClick(userId, campaignId);
         
         log.info("Recorded Learn More click for user {} on campaign {}", userId, campaignId);
     }
@@ -156,6 +185,15 @@ public class UserCampaignService {
      */
     @Transactional
     public void recordFormSubmission(String userId, String campaignId) throws DataHandlingException {
+        if (historyWriter.updatePending(userId, campaignId, pending -> {
+            pending.setHasClickedLearnMore(true);
+            pending.setHasSubmittedForm(true);
+        })) {
+            userWeeklyStateCache.recordFormSubmission(userId, campaignId);
+            log.info("Recorded form submission for user {} on pending view of campaign {}", userId, campaignId);
+            return;
+        }
+        
         Optional<UserCampaignHistory> historyOpt = userCampaignHistoryRepository
                 .findByCampaignIdAndUserId(campaignId, userId);
         
@@ -170,6 +208,7 @@ public class UserCampaignService {
         history.setHasClickedLearnMore(true);
         history.setHasSubmittedForm(true);
         userCampaignHistoryRepository.save(history);
+        userWeeklyStateCache.recordFormSubmission(userId, campaignId);
         
         log.info("Recorded form submission for user {} on campaign {}", userId, campaignId);
         
@@ -180,4 +219,5 @@ public class UserCampaignService {
             // Could update campaign statistics here if needed
             campaignRepository.save(campaign);
         }
-    }
\ No newline at end of file
+    }
+}
@@ -0,0 +1,85 @@
+package com.usbank.corp.dcr.api.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Running count of how many times a user has been shown a campaign
+ * Maintained alongside user_campaign_history so display capping can be
+ * checked without loading the user's full history
+ */
+@Entity
+@Table(name = "user_campaign_view_count")
+@IdClass(UserCampaignViewCount.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCampaignViewCount {
+    @Id
+    @Column(nullable = false, name = "user_id")
+    private String userId;
+    
+    @Id
+    @Column(nullable = false, name = "campaign_id")
+    private String campaignId;
+    
+    @Column(nullable = false, name = "view_count")
+    private Long viewCount;
+    
+    @Column(name = "last_view_date")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastViewDate;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private String userId;
+        private String campaignId;
+    }
+}
+
+package com.usbank.corp.dcr.api.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.usbank.corp.dcr.api.entity.UserCampaignViewCount;
+
+@Repository
+public interface UserCampaignViewCountRepository 
+        extends JpaRepository<UserCampaignViewCount, UserCampaignViewCount.Key> {
+    
+    /**
+     * Find all view counters of a user
+     * 
+     * @param userId User ID
+     * @return One counter per campaign the user has seen
+     */
+    List<UserCampaignViewCount> findByUserId(String userId);
+    
+    /**
+     * Find all view counters of many users
+     * 
+     * @param userIds User IDs
+     * @return One counter per user and campaign seen
+     */
+    List<UserCampaignViewCount> findByUserIdIn(Collection<String> userIds);
+}
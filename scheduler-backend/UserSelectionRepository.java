@@ -0,0 +1,191 @@
+package com.usbank.corp.dcr.api.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Repository;
+
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.entity.RotationState;
+import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
+
+/**
+ * Everything campaign selection needs to know about one user, in one statement
+ *
+ * Returns the user's most recent history row of the week, the campaigns
+ * eligible for the company on the request date and the user's view count of
+ * each of them. The week's row and the view counts are joined onto the
+ * campaign rows; a single anchor row keeps the week's row when no campaign
+ * is eligible. Eligibility uses the same conditions as
+ * CampaignRepository.getEligibleCampaignsBasedonRequestDate.
+ */
+@Repository
+public class UserSelectionRepository {
+
+    private static final String SELECT_USER_SELECTION = "WITH recent AS ("
+            + "    SELECT TOP 1 campaign_id, has_clicked_learn_more, has_submitted_form, view_date "
+            + "    FROM [dbo].[user_campaign_history] "
+            + "    WHERE user_id = ? AND view_date >= ? "
+            + "    ORDER BY view_date DESC"
+            + "), eligible AS ("
+            + "    SELECT c.* FROM [dbo].[campaigns_dev_rotation1] c "
+            + "    INNER JOIN [dbo].[campaign_company_mapping] cc ON cc.campaign_id = c.id "
+            + "    WHERE cc.company_name = ? "
+            + "    AND (c.[start_date] <= ? AND c.[end_date] >= ?) "
+            + "    AND (c.visibility is NULL OR c.visibility != 'COMPLETED') "
+            + "    AND (c.status = 'ACTIVE' OR c.status = 'SCHEDULED')"
+            + ") "
+            + "SELECT r.campaign_id AS recent_campaign_id, r.has_clicked_learn_more AS recent_clicked_learn_more, "
+            + "r.has_submitted_form AS recent_submitted_form, r.view_date AS recent_view_date, "
+            + "e.*, v.view_count AS user_view_count "
+            + "FROM (SELECT 1 AS anchor) a "
+            + "LEFT JOIN recent r ON 1 = 1 "
+            + "LEFT JOIN eligible e ON 1 = 1 "
+            + "LEFT JOIN [dbo].[user_campaign_view_count] v ON v.user_id = ? AND v.campaign_id = e.id "
+            + "ORDER BY e.rotation_position ASC, e.created_date ASC";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public UserSelectionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Load a user's weekly history, eligible campaigns and view counts
+     *
+     * @param userId User identifier
+     * @param weekStartDate Start of the current week
+     * @param company Company identifier
+     * @param requestDate Request date in yyyy-MM-dd format
+     * @return Combined result of the single query
+     */
+    public UserSelection findUserSelection(String userId, Date weekStartDate, String company, String requestDate) {
+        return jdbcTemplate.query(SELECT_USER_SELECTION, ps -> {
+            ps.setString(1, userId);
+            ps.setTimestamp(2, new Timestamp(weekStartDate.getTime()));
+            ps.setString(3, company);
+            ps.setString(4, requestDate);
+            ps.setString(5, requestDate);
+            ps.setString(6, userId);
+        }, (ResultSetExtractor<UserSelection>) rs -> extract(userId, rs));
+    }
+
+    private static UserSelection extract(String userId, ResultSet rs) throws SQLException {
+        UserCampaignHistory recent = null;
+        List<CampaignMapping> campaigns = new ArrayList<>();
+        Map<String, Long> viewCounts = new HashMap<>();
+
+        while (rs.next()) {
+            if (recent == null && rs.getString("recent_campaign_id") != null) {
+                recent = new UserCampaignHistory();
+                recent.setUserId(userId);
+                recent.setCampaignId(rs.getString("recent_campaign_id"));
+                recent.setViewDate(rs.getTimestamp("recent_view_date"));
+                recent.setHasClickedLearnMore(rs.getBoolean("recent_clicked_learn_more"));
+                recent.setHasSubmittedForm(rs.getBoolean("recent_submitted_form"));
+            }
+
+            String campaignId = rs.getString("id");
+            if (campaignId == null) {
+                continue;
+            }
+            campaigns.add(mapCampaign(rs));
+
+            long viewCount = rs.getLong("user_view_count");
+            if (!rs.wasNull()) {
+                viewCounts.put(campaignId, viewCount);
+            }
+        }
+
+        return new UserSelection(Optional.ofNullable(recent), campaigns, viewCounts);
+    }
+
+    private static CampaignMapping mapCampaign(ResultSet rs) throws SQLException {
+        CampaignMapping campaign = new CampaignMapping();
+        campaign.setId(rs.getString("id"));
+        campaign.setName(rs.getString("name"));
+        campaign.setBannerId(rs.getString("banner_id"));
+        campaign.setInsightType(rs.getString("insight_type"));
+        campaign.setInsightSubType(rs.getString("insight_sub_type"));
+        campaign.setInsight(rs.getString("insight"));
+        campaign.setCompanyNames(rs.getString("company_names"));
+        campaign.setEligibleCompanies(getInteger(rs, "eligible_companies"));
+        campaign.setEligibleUsers(getInteger(rs, "eligible_users"));
+        campaign.setStartDate(rs.getDate("start_date"));
+        campaign.setEndDate(rs.getDate("end_date"));
+        campaign.setFrequencyPerWeek(getInteger(rs, "frequency_per_week"));
+        campaign.setOrginalFrequencyPerWeek(getInteger(rs, "original_frequency_per_week"));
+        campaign.setFrequencyEpochWeek(getInteger(rs, "frequency_epoch_week"));
+        campaign.setDisplayCapping(getInteger(rs, "display_capping"));
+        campaign.setDisplayLocation(rs.getString("display_location"));
+        campaign.setCreatedBy(rs.getString("created_by"));
+        campaign.setCreatedDate(rs.getTimestamp("created_date"));
+        campaign.setUpdatedDate(rs.getTimestamp("updated_date"));
+        campaign.setVisibility(rs.getString("visibility"));
+        campaign.setStart_week_of_requested_date(rs.getDate("start_week_of_requested_date"));
+        campaign.setRequested_date(rs.getDate("requested_date"));
+        campaign.setStatus(rs.getString("status"));
+        campaign.setRotation_status(rs.getString("rotation_status"));
+        String rotationState = rs.getString("rotation_state");
+        campaign.setRotationState(rotationState != null ? RotationState.valueOf(rotationState) : null);
+        campaign.setRotationPosition(getInteger(rs, "rotation_position"));
+        campaign.setRotationPriority(getInteger(rs, "rotation_priority"));
+        campaign.setLearnMoreUrl(rs.getString("learn_more_url"));
+        campaign.setFormSubmissionUrl(rs.getString("form_submission_url"));
+        return campaign;
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Result of findUserSelection
+     */
+    public static final class UserSelection {
+        private final Optional<UserCampaignHistory> recentHistory;
+        private final List<CampaignMapping> eligibleCampaigns;
+        private final Map<String, Long> viewCounts;
+
+        UserSelection(Optional<UserCampaignHistory> recentHistory, List<CampaignMapping> eligibleCampaigns,
+                      Map<String, Long> viewCounts) {
+            this.recentHistory = recentHistory;
+            this.eligibleCampaigns = Collections.unmodifiableList(eligibleCampaigns);
+            this.viewCounts = Collections.unmodifiableMap(viewCounts);
+        }
+
+        /**
+         * The user's most recent history row of the week, if any
+         */
+        public Optional<UserCampaignHistory> getRecentHistory() {
+            return recentHistory;
+        }
+
+        /**
+         * Eligible campaigns in rotation order
+         */
+        public List<CampaignMapping> getEligibleCampaigns() {
+            return eligibleCampaigns;
+        }
+
+        /**
+         * The user's view count of each eligible campaign, campaigns never seen are absent
+         */
+        public Map<String, Long> getViewCounts() {
+            return viewCounts;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.usbank.corp.dcr.api.cache;
+
+import java.util.Optional;
+
+import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
+
+/**
+ * What a user has done with campaigns in one week
+ * Immutable; transitions produce a new instance
+ */
+public final class UserWeeklyState {
+    
+    public enum Engagement {
+        NONE,           // Nothing shown this week
+        SEEN,           // Shown a campaign, no further interaction
+        CLICKED,        // Clicked learn more, may see the same campaign once more
+        SUBMITTED       // Submitted the form, done for the week
+    }
+    
+    private final long weekStart;
+    private final Engagement engagement;
+    private final String campaignId;
+    
+    public UserWeeklyState(long weekStart, Engagement engagement, String campaignId) {
+        this.weekStart = weekStart;
+        this.engagement = engagement;
+        this.campaignId = campaignId;
+    }
+    
+    /**
+     * Derive the state from the user's most recent history row of the week
+     * 
+     * @param weekStart Week start in epoch millis
+     * @param history Most recent history row of the week, if any
+     * @return Weekly state
+     */
+    public static UserWeeklyState from(long weekStart, Optional<UserCampaignHistory> history) {
+        if (!history.isPresent()) {
+            return new UserWeeklyState(weekStart, Engagement.NONE, null);
+        }
+        
+        UserCampaignHistory row = history.get();
+        Engagement engagement;
+        if (Boolean.TRUE.equals(row.getHasSubmittedForm())) {
+            engagement = Engagement.SUBMITTED;
+        } else if (Boolean.TRUE.equals(row.getHasClickedLearnMore())) {
+            engagement = Engagement.CLICKED;
+        } else {
+            engagement = Engagement.SEEN;
+        }
+        return new UserWeeklyState(weekStart, engagement, row.getCampaignId());
+    }
+    
+    public UserWeeklyState withEngagement(Engagement engagement) {
+        return new UserWeeklyState(weekStart, engagement, campaignId);
+    }
+    
+    public long getWeekStart() {
+        return weekStart;
+    }
+    
+    public Engagement getEngagement() {
+        return engagement;
+    }
+    
+    /**
+     * Campaign the user engaged with this week, null for NONE
+     */
+    public String getCampaignId() {
+        return campaignId;
+    }
+}
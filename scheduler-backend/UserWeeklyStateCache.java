@@ -0,0 +1,238 @@
+package com.usbank.corp.dcr.api.cache;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.usbank.corp.dcr.api.cache.UserWeeklyState.Engagement;
+import com.usbank.corp.dcr.api.entity.UserCampaignHistory;
+
+/**
+ * Bounded cache of each user's engagement state for the current week
+ *
+ * Entries are keyed by user and stamped with the week start from
+ * RotationUtils.getWeekStartDate; an entry from another week is treated as a
+ * miss, so everything expires at the week boundary without a sweep. The
+ * record* methods keep entries current as the user interacts, so repeat
+ * visitors are answered without touching user_campaign_history.
+ *
+ * Entries are only authoritative for this instance's own writes. NONE
+ * entries live for a short TTL because another instance may serve the user
+ * in the meantime, and SEEN and CLICKED entries for another TTL because a
+ * learn-more click or form submission may be handled by another instance.
+ * SUBMITTED is final for the week and kept until the week ends.
+ */
+@Component
+public class UserWeeklyStateCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long noneTtlMillis;
+    private final long engagedTtlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public UserWeeklyStateCache(@Value("${campaign.cache.user-state.max-entries:200000}") int maxEntries,
+                                @Value("${campaign.cache.user-state.none-ttl-seconds:60}") long noneTtlSeconds,
+                                @Value("${campaign.cache.user-state.engaged-ttl-seconds:60}") long engagedTtlSeconds) {
+        int perSegment = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.noneTtlMillis = TimeUnit.SECONDS.toMillis(noneTtlSeconds);
+        this.engagedTtlMillis = TimeUnit.SECONDS.toMillis(engagedTtlSeconds);
+    }
+
+    /**
+     * Get the user's state for the week, loading it on a miss
+     *
+     * @param userId User identifier
+     * @param weekStart Start of the current week
+     * @param loader Loads the user's most recent history row of the week
+     * @return Weekly state
+     */
+    public UserWeeklyState get(String userId, Date weekStart, Supplier<Optional<UserCampaignHistory>> loader) {
+        UserWeeklyState cached = getIfPresent(userId, weekStart);
+        if (cached != null) {
+            return cached;
+        }
+        return putLoaded(userId, UserWeeklyState.from(weekStart.getTime(), loader.get()));
+    }
+
+    /**
+     * Get the user's state for the week without loading it
+     *
+     * @param userId User identifier
+     * @param weekStart Start of the current week
+     * @return Weekly state, or null on a miss
+     */
+    public UserWeeklyState getIfPresent(String userId, Date weekStart) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Entry entry = segment.get(userId);
+            if (entry != null && entry.isCurrent(weekStart.getTime(), System.currentTimeMillis())) {
+                hits.increment();
+                return entry.state;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a state loaded from the database
+     * A current entry stored meanwhile by a record* call wins over the loaded state
+     *
+     * @param userId User identifier
+     * @param loaded State loaded from the database
+     * @return The state now cached for the user
+     */
+    public UserWeeklyState putLoaded(String userId, UserWeeklyState loaded) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Entry current = segment.get(userId);
+            if (current != null && current.isCurrent(loaded.getWeekStart(), System.currentTimeMillis())
+                    && current.state.getEngagement().compareTo(loaded.getEngagement()) >= 0) {
+                return current.state;
+            }
+            segment.put(userId, newEntry(loaded));
+        }
+        return loaded;
+    }
+
+    /**
+     * Record that a campaign was shown to the user this week
+     */
+    public void recordView(String userId, String campaignId, Date weekStart) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.put(userId, newEntry(new UserWeeklyState(weekStart.getTime(), Engagement.SEEN, campaignId)));
+        }
+    }
+
+    /**
+     * Record that the user clicked learn more on a campaign
+     */
+    public void recordLearnMoreClick(String userId, String campaignId) {
+        advance(userId, campaignId, Engagement.CLICKED);
+    }
+
+    /**
+     * Record that the user submitted the form of a campaign
+     */
+    public void recordFormSubmission(String userId, String campaignId) {
+        advance(userId, campaignId, Engagement.SUBMITTED);
+    }
+
+    /**
+     * Forget everything about a user
+     */
+    public void invalidate(String userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.remove(userId);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private void advance(String userId, String campaignId, Engagement engagement) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Entry entry = segment.get(userId);
+            if (entry == null) {
+                return;
+            }
+
+            UserWeeklyState state = entry.state;
+            if (campaignId.equals(state.getCampaignId())) {
+                if (engagement.compareTo(state.getEngagement()) > 0) {
+                    segment.put(userId, newEntry(state.withEngagement(engagement)));
+                }
+            } else {
+                // Interaction with a campaign from another week, reload on next read
+                segment.remove(userId);
+            }
+        }
+    }
+
+    private Entry newEntry(UserWeeklyState state) {
+        long expiresAt;
+        switch (state.getEngagement()) {
+            case NONE:
+                expiresAt = System.currentTimeMillis() + noneTtlMillis;
+                break;
+            case SUBMITTED:
+                expiresAt = Long.MAX_VALUE;
+                break;
+            default:
+                // Clicks and submissions handled by another instance never reach this one
+                expiresAt = System.currentTimeMillis() + engagedTtlMillis;
+                break;
+        }
+        return new Entry(state, expiresAt);
+    }
+
+    private Segment segmentFor(String userId) {
+        int h = userId.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+        private final UserWeeklyState state;
+        private final long expiresAt;
+
+        Entry(UserWeeklyState state, long expiresAt) {
+            this.state = state;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isCurrent(long weekStart, long now) {
+            return state.getWeekStart() == weekStart && expiresAt > now;
+        }
+    }
+
+    // Access-ordered LRU, guarded by its own monitor
+    private static final class Segment extends LinkedHashMap<String, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.usbank.corp.dcr.api.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.usbank.corp.dcr.api.utils.VirtualThreads;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in virtual thread execution of HTTP requests
+ *
+ * Enabled with campaign.web.virtual-threads.enabled=true. Tomcat then runs
+ * every request, and the repository calls it makes, on its own virtual
+ * thread instead of the bounded worker pool, so requests blocked on the
+ * database no longer hold a platform thread. On runtimes without virtual
+ * threads the platform pool is kept and a warning is logged.
+ *
+ * Concurrency moves from the thread pool to ConcurrencyLimitFilter, which
+ * ConcurrencyLimitConfig turns on by default together with virtual threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "campaign.web.virtual-threads.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        if (!VirtualThreads.isAvailable()) {
+            log.warn("Virtual threads requested but not available on Java {}, keeping the platform thread pool",
+                    System.getProperty("java.version"));
+            return protocolHandler -> { };
+        }
+        
+        return protocolHandler -> {
+            ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+            protocolHandler.setExecutor(executor);
+            log.info("Handling HTTP requests on virtual threads");
+        };
+    }
+}
@@ -0,0 +1,284 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.usbank.corp.dcr.api.utils.RotationUtils;
+
+/**
+ * Bloom filter of the users with a history row in the current week
+ *
+ * A user the filter has never seen has no history this week, so the
+ * selection path can skip the history lookup and treat the user as not
+ * engaged. A user it has seen may have history, and the lookup goes to the
+ * database as before; lookups that then find nothing are counted as false
+ * positives.
+ *
+ * The filter has a fixed size, chosen from the expected number of weekly
+ * viewers and the target false positive rate, and is lock-free: bits are
+ * set with compare-and-set on an AtomicLongArray. It is loaded from the
+ * week's history when the application starts, fed by every view recorded
+ * on this instance, and replaced by an empty filter for the new week at the
+ * rollover. Views recorded by other instances are picked up by a periodic
+ * refresh on recorded_at, so another instance's view can go unseen for up
+ * to the refresh interval. Callers do not cache a NONE derived from the
+ * filter, so that interval is the whole window rather than adding to the
+ * NONE TTL of UserWeeklyStateCache. Until a week's filter is loaded, every
+ * user "may" have history.
+ */
+@Component
+public class WeeklyViewerFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(WeeklyViewerFilter.class);
+
+    private static final String SELECT_WEEK_VIEWERS = "SELECT DISTINCT user_id FROM [dbo].[user_campaign_history] "
+            + "WHERE view_date >= ? AND view_date < ?";
+
+    private static final String SELECT_RECENT_VIEWERS = "SELECT user_id, recorded_at "
+            + "FROM [dbo].[user_campaign_history] "
+            + "WHERE recorded_at > ? AND view_date >= ? AND view_date < ?";
+
+    private static final String DATABASE_NOW = "SELECT SYSDATETIME()";
+
+    // Rows can commit a little after their recorded_at, so every refresh looks back this far
+    private static final long REFRESH_OVERLAP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RotationUtils rotationUtils;
+    private final long bits;
+    private final int hashes;
+
+    private final AtomicReference<WeekFilter> current = new AtomicReference<>();
+
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder positives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    @Autowired
+    public WeeklyViewerFilter(JdbcTemplate jdbcTemplate, RotationUtils rotationUtils,
+                              @Value("${campaign.cache.viewer-filter.expected-users:1000000}") long expectedUsers,
+                              @Value("${campaign.cache.viewer-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rotationUtils = rotationUtils;
+        // Optimal size and number of hashes for n elements at false positive rate p
+        double ln2 = Math.log(2);
+        this.bits = Math.max(64, (long) Math.ceil(-expectedUsers * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedUsers * ln2));
+    }
+
+    /**
+     * Check whether a user may have history in a week
+     *
+     * @param userId User identifier
+     * @param weekStart Start of the week
+     * @return False only if the user certainly has no history row that week
+     */
+    public boolean mightHaveViewed(String userId, Date weekStart) {
+        WeekFilter filter = current.get();
+        if (filter == null || !filter.loaded || filter.weekStart != weekStart.getTime()) {
+            return true;
+        }
+        if (filter.mightContain(userId)) {
+            positives.increment();
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * Record a view of a user in a week
+     */
+    public void recordView(String userId, Date weekStart) {
+        WeekFilter filter = current.get();
+        if (filter != null && filter.weekStart == weekStart.getTime()) {
+            filter.add(userId);
+        }
+    }
+
+    /**
+     * Record the result of a history lookup made because the filter may have contained the user
+     *
+     * @param found Whether the lookup found history in the week
+     */
+    public void recordLookup(Date weekStart, boolean found) {
+        WeekFilter filter = current.get();
+        if (!found && filter != null && filter.loaded && filter.weekStart == weekStart.getTime()) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Build the filter of the current week from the history table
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Date weekStart = rotationUtils.getWeekStartDate(new Date());
+        long start = System.currentTimeMillis();
+
+        // Published before loading, so views recorded meanwhile are not lost
+        WeekFilter filter = new WeekFilter(weekStart.getTime(), bits);
+        current.set(filter);
+
+        Timestamp watermark = jdbcTemplate.queryForObject(DATABASE_NOW, Timestamp.class);
+        jdbcTemplate.query(SELECT_WEEK_VIEWERS, rs -> {
+            filter.add(rs.getString(1));
+        }, weekStart, nextWeekStart(weekStart));
+        filter.watermark = watermark.getTime();
+        filter.loaded = true;
+
+        log.info("Loaded viewer filter of week {} with {} of {} bits set in {} ms",
+                weekStart, filter.setBits.sum(), bits, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Add views recorded by other instances, and start a new filter at the week rollover
+     */
+    @Scheduled(fixedDelayString = "${campaign.cache.viewer-filter.refresh-interval-ms:30000}",
+               initialDelayString = "${campaign.cache.viewer-filter.refresh-interval-ms:30000}")
+    public void refresh() {
+        WeekFilter filter = current.get();
+        Date weekStart = rotationUtils.getWeekStartDate(new Date());
+
+        try {
+            if (filter == null || !filter.loaded || filter.weekStart != weekStart.getTime()) {
+                // A new week starts with few viewers, so a full load is cheap
+                load();
+                return;
+            }
+
+            long[] watermark = { filter.watermark };
+            jdbcTemplate.query(SELECT_RECENT_VIEWERS, rs -> {
+                filter.add(rs.getString(1));
+                watermark[0] = Math.max(watermark[0], rs.getTimestamp(2).getTime());
+            }, new Timestamp(filter.watermark - REFRESH_OVERLAP_MILLIS), weekStart, nextWeekStart(weekStart));
+            filter.watermark = watermark[0];
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh the viewer filter", e);
+        }
+    }
+
+    /**
+     * @return Bytes held by the filter's bit array
+     */
+    public long getMemoryBytes() {
+        return (bits + 63) / 64 * 8;
+    }
+
+    /**
+     * @return False positive rate expected from the current fill of the filter
+     */
+    public double getExpectedFalsePositiveRate() {
+        WeekFilter filter = current.get();
+        return filter != null ? Math.pow((double) filter.setBits.sum() / bits, hashes) : 0;
+    }
+
+    /**
+     * @return Share of users without history this week that the filter let through to the database
+     */
+    public double getObservedFalsePositiveRate() {
+        long falsePositive = falsePositives.sum();
+        long trueNegative = negatives.sum();
+        return falsePositive + trueNegative == 0 ? 0 : (double) falsePositive / (falsePositive + trueNegative);
+    }
+
+    public long getNegativeCount() {
+        return negatives.sum();
+    }
+
+    public long getPositiveCount() {
+        return positives.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    private Date nextWeekStart(Date weekStart) {
+        // Eight days on always lands in the next week, whatever daylight saving does
+        return rotationUtils.getWeekStartDate(new Date(weekStart.getTime() + TimeUnit.DAYS.toMillis(8)));
+    }
+
+    /**
+     * The bits of one week
+     * Positions come from two 64-bit hashes combined as h1 + i * h2
+     */
+    private final class WeekFilter {
+        private final long weekStart;
+        private final AtomicLongArray words;
+        private final LongAdder setBits = new LongAdder();
+        private volatile boolean loaded;
+        private volatile long watermark;
+
+        WeekFilter(long weekStart, long bits) {
+            this.weekStart = weekStart;
+            this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        }
+
+        void add(String userId) {
+            long h1 = hash(userId);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                long word = words.get(index);
+                while ((word & mask) == 0) {
+                    if (words.compareAndSet(index, word, word | mask)) {
+                        setBits.increment();
+                        break;
+                    }
+                    word = words.get(index);
+                }
+            }
+        }
+
+        boolean mightContain(String userId) {
+            long h1 = hash(userId);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters, finalized so every bit depends on every input bit
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93e2d5f5ba7L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,49 @@
+package com.usbank.corp.dcr.api.benchmark;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suite with the GC profiler and writes a JSON baseline
+ *
+ * Usage: BenchmarkRunner [include regex] [output directory]
+ * Every run writes baseline-yyyyMMdd-HHmmss.json; compare it with an earlier
+ * one (for example in jmh.morethan.io) to spot throughput or allocation
+ * (gc.alloc.rate.norm) regressions.
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_INCLUDE = "com\\.usbank\\.corp\\.dcr\\.api\\..*Benchmark";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+        File outputDirectory = new File(args.length > 1 ? args[1] : "target/jmh");
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + outputDirectory);
+        }
+
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        File result = new File(outputDirectory, "baseline-" + stamp + ".json");
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+
+        new Runner(options).run();
+        System.out.println("Benchmark baseline written to " + result.getAbsolutePath());
+    }
+}
@@ -0,0 +1,139 @@
+package com.usbank.corp.dcr.api.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.repository.CampaignRepository;
+
+/**
+ * In-memory stand-ins for the Spring Data repositories used by the benchmarks
+ *
+ * Each fake is a dynamic proxy that answers the methods it is given handlers
+ * for and fails loudly on anything else, so a benchmark never silently
+ * measures a database round trip that is not there.
+ */
+public final class InMemoryRepositories {
+
+    public static final String COMPANY = "ACME";
+
+    private InMemoryRepositories() {
+    }
+
+    /**
+     * Build a fake repository answering only the given methods
+     *
+     * @param repositoryType Repository interface
+     * @param handlers Method name to handler taking the call arguments
+     * @return Proxy implementing the repository
+     */
+    public static <T> T fake(Class<T> repositoryType, Map<String, Function<Object[], Object>> handlers) {
+        Object proxy = Proxy.newProxyInstance(repositoryType.getClassLoader(), new Class<?>[] { repositoryType },
+                (self, method, args) -> {
+                    Function<Object[], Object> handler = handlers.get(method.getName());
+                    if (handler != null) {
+                        return handler.apply(args != null ? args : new Object[0]);
+                    }
+
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "toString":
+                            return "InMemory" + repositoryType.getSimpleName();
+                        default:
+                            throw new UnsupportedOperationException(
+                                    repositoryType.getSimpleName() + "." + method.getName() + " is not faked");
+                    }
+                });
+        return repositoryType.cast(proxy);
+    }
+
+    /**
+     * Build a fake repository that answers nothing
+     */
+    public static <T> T empty(Class<T> repositoryType) {
+        return fake(repositoryType, Collections.emptyMap());
+    }
+
+    /**
+     * Campaign repository over a fixed catalog
+     * Quota claims always succeed, so selection never runs dry during a measurement
+     */
+    public static CampaignRepository campaignRepository(List<CampaignMapping> catalog) {
+        List<CampaignMapping> byId = new ArrayList<>(catalog);
+        byId.sort((c1, c2) -> c1.getId().compareTo(c2.getId()));
+
+        Map<String, Function<Object[], Object>> handlers = new HashMap<>();
+        handlers.put("getEligibleCampaignsBasedonRequestDate", args -> new ArrayList<>(catalog));
+        handlers.put("findCampaignsActiveInWeekAfter", args -> {
+            String afterId = (String) args[2];
+            int limit = (Integer) args[3];
+            List<CampaignMapping> page = new ArrayList<>(limit);
+            for (CampaignMapping campaign : byId) {
+                if (campaign.getId().compareTo(afterId) > 0 && page.size() < limit) {
+                    page.add(campaign);
+                }
+            }
+            return page;
+        });
+        handlers.put("findById", args -> catalog.stream().filter(c -> c.getId().equals(args[0])).findFirst());
+        handlers.put("claimQuota", args -> 1);
+        handlers.put("findAvailableQuota", args -> Integer.MAX_VALUE);
+        handlers.put("recordImpressions", args -> 1);
+        handlers.put("returnQuota", args -> 1);
+        return fake(CampaignRepository.class, handlers);
+    }
+
+    /**
+     * Generate a catalog of active campaigns for one company
+     *
+     * @param size Number of campaigns
+     * @param now Reference date, campaigns run from a month before to a month after
+     * @return Campaigns in creation order
+     */
+    public static List<CampaignMapping> catalog(int size, Date now) {
+        Random random = new Random(42);
+        long day = 24L * 60 * 60 * 1000;
+        List<CampaignMapping> campaigns = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            CampaignMapping campaign = new CampaignMapping();
+            campaign.setId(String.format("campaign-%05d", i));
+            campaign.setName("Campaign " + i);
+            campaign.setCompanyNames(COMPANY);
+            campaign.setStatus("ACTIVE");
+            campaign.setStartDate(new Date(now.getTime() - 30 * day));
+            campaign.setEndDate(new Date(now.getTime() + 30 * day));
+            campaign.setCreatedDate(new Date(now.getTime() - 60 * day + i * 1000L));
+            campaign.setFrequencyPerWeek(1000);
+            campaign.setOrginalFrequencyPerWeek(1000);
+            campaign.setDisplayCapping(1 + random.nextInt(20));
+            campaigns.add(campaign);
+        }
+        return campaigns;
+    }
+
+    /**
+     * Derive a user's per-campaign view counts from a number of history rows
+     * Rows are spread over the catalog with a skew towards older campaigns
+     */
+    public static Map<String, Long> viewCounts(List<CampaignMapping> catalog, int historyRows) {
+        Random random = new Random(7);
+        Map<String, Long> counts = new HashMap<>();
+
+        for (int i = 0; i < historyRows && !catalog.isEmpty(); i++) {
+            int index = (int) (Math.abs(random.nextGaussian()) * catalog.size() / 3) % catalog.size();
+            counts.merge(catalog.get(index).getId(), 1L, Long::sum);
+        }
+        return counts;
+    }
+}
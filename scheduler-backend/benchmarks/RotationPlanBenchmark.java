@@ -0,0 +1,64 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.usbank.corp.dcr.api.benchmark.InMemoryRepositories;
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.repository.CampaignRepository;
+import com.usbank.corp.dcr.api.utils.RotationUtils;
+
+/**
+ * Rotation plan lookup of CampaignRotationManager
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotationPlanBenchmark {
+
+    @Param({ "1", "50", "500", "5000" })
+    int campaignsPerCompany;
+
+    private CampaignRotationManager rotationManager;
+    private List<CampaignMapping> eligibleCampaigns;
+    private Date now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        now = new Date();
+        List<CampaignMapping> campaigns = InMemoryRepositories.catalog(campaignsPerCompany, now);
+        CampaignRepository campaignRepository = InMemoryRepositories.campaignRepository(campaigns);
+        RotationUtils rotationUtils = new RotationUtils();
+
+        rotationManager = new CampaignRotationManager(campaignRepository, null, null, rotationUtils,
+                new CampaignCompanyIndex(campaignRepository, null, null, null, null),
+                new CampaignQuotaCounters(campaignRepository, rotationUtils, 20, 30),
+                null, 500, 1);
+        rotationManager.loadRotationPlans();
+
+        // Eligible list as the request path sees it: the later half of the catalog
+        eligibleCampaigns = campaigns.subList(campaigns.size() / 2, campaigns.size());
+    }
+
+    @Benchmark
+    public CampaignMapping getNextCampaignInRotation() {
+        return rotationManager.getNextCampaignInRotation(InMemoryRepositories.COMPANY, eligibleCampaigns, now);
+    }
+}
@@ -0,0 +1,70 @@
+package com.usbank.corp.dcr.api.utils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Date functions of RotationUtils as called on the request path
+ * Runs on several threads since the functions are shared by all requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RotationUtilsBenchmark {
+
+    private RotationUtils rotationUtils;
+    private Date now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rotationUtils = new RotationUtils();
+        now = new Date();
+    }
+
+    @Benchmark
+    public String convertDate() {
+        return rotationUtils.convertDate("20250407");
+    }
+
+    @Benchmark
+    public Date getinDate() {
+        return rotationUtils.getinDate("2025-04-07");
+    }
+
+    @Benchmark
+    public Date getWeekStartDate() {
+        return rotationUtils.getWeekStartDate(now);
+    }
+
+    @Benchmark
+    public Date getWeekEndDate() {
+        return rotationUtils.getWeekEndDate(now);
+    }
+
+    @Benchmark
+    public int getEpochWeek() {
+        return rotationUtils.getEpochWeek(now);
+    }
+
+    @Benchmark
+    public String getWeekKey() {
+        return rotationUtils.getWeekKey(now);
+    }
+}
@@ -0,0 +1,117 @@
+package com.usbank.corp.dcr.api.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usbank.corp.dcr.api.benchmark.InMemoryRepositories;
+import com.usbank.corp.dcr.api.cache.CampaignPayloadCache;
+import com.usbank.corp.dcr.api.cache.EligibleCampaignCache;
+import com.usbank.corp.dcr.api.cache.UserWeeklyStateCache;
+import com.usbank.corp.dcr.api.entity.CampaignMapping;
+import com.usbank.corp.dcr.api.repository.CampaignRepository;
+import com.usbank.corp.dcr.api.repository.UserCampaignHistoryRepository;
+import com.usbank.corp.dcr.api.repository.UserCampaignViewCountRepository;
+import com.usbank.corp.dcr.api.repository.UserSelectionRepository;
+import com.usbank.corp.dcr.api.utils.RotationUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Per-request selection steps of RotationCampaignService
+ * Lives in the service package to reach the package-private selection methods
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({ "1", "50", "500", "5000" })
+    int campaignsPerCompany;
+
+    @Param({ "0", "100", "10000" })
+    int historyRows;
+
+    private RotationCampaignService service;
+    private List<CampaignMapping> campaigns;
+    private Map<String, Long> viewCounts;
+    private List<CampaignMapping> availableCampaigns;
+    private Date now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        now = new Date();
+        campaigns = InMemoryRepositories.catalog(campaignsPerCompany, now);
+        viewCounts = InMemoryRepositories.viewCounts(campaigns, historyRows);
+        service = newService(campaigns);
+        availableCampaigns = service.filterCampaignsForUser(campaigns, viewCounts);
+    }
+
+    @Benchmark
+    public List<CampaignMapping> filterCampaignsForUser() {
+        return service.filterCampaignsForUser(campaigns, viewCounts);
+    }
+
+    @Benchmark
+    public CampaignMapping selectCampaignForRotation() {
+        return service.selectCampaignForRotation(InMemoryRepositories.COMPANY, availableCampaigns, now);
+    }
+
+    static RotationCampaignService newService(List<CampaignMapping> catalog) {
+        RotationUtils rotationUtils = new RotationUtils();
+        CampaignRepository campaignRepository = InMemoryRepositories.campaignRepository(catalog);
+
+        // Never started: nothing is appended during a measurement, only pending lookups run
+        UserCampaignHistoryWriter historyWriter = new UserCampaignHistoryWriter(null, null, 500, 50, 20000, 100, 100, 30000,
+                2000);
+
+        EligibleCampaignCache eligibleCampaignCache = new EligibleCampaignCache(2000, 300);
+        UserWeeklyStateCache userWeeklyStateCache = new UserWeeklyStateCache(200000, 60, 60);
+        CampaignPayloadCache campaignPayloadCache = new CampaignPayloadCache(new ObjectMapper(), 10000);
+        // Never loaded: every user may have viewed, as before the filter existed
+        WeeklyViewerFilter weeklyViewerFilter = new WeeklyViewerFilter(null, rotationUtils, 1000000, 0.01);
+
+        CampaignCompanyIndex campaignCompanyIndex = new CampaignCompanyIndex(campaignRepository, null, null, null, null);
+        CampaignQuotaCounters campaignQuotaCounters = new CampaignQuotaCounters(campaignRepository, rotationUtils, 20, 30);
+        CampaignRotationManager campaignRotationManager = new CampaignRotationManager(campaignRepository, null, null,
+                rotationUtils, campaignCompanyIndex, campaignQuotaCounters, null, 500, 1);
+        campaignRotationManager.loadRotationPlans();
+
+        RotationCampaignService service = new RotationCampaignService(
+                campaignRepository,
+                InMemoryRepositories.empty(UserCampaignHistoryRepository.class),
+                eligibleCampaignCache,
+                campaignCompanyIndex,
+                userWeeklyStateCache,
+                new CampaignViewCounter(InMemoryRepositories.empty(UserCampaignViewCountRepository.class), 
+                        historyWriter, null, null, null),
+                campaignQuotaCounters,
+                historyWriter,
+                new SelectionMetrics(new SimpleMeterRegistry(), eligibleCampaignCache, userWeeklyStateCache,
+                        campaignPayloadCache, weeklyViewerFilter, historyWriter),
+                new UserSelectionRepository(null),
+                campaignPayloadCache,
+                weeklyViewerFilter,
+                campaignRotationManager);
+        service.rotationUtils = rotationUtils;
+        return service;
+    }
+}
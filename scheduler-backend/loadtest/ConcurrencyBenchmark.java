@@ -0,0 +1,276 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.usbank.corp.dcr.api.utils.VirtualThreads;
+
+/**
+ * Compares platform and virtual thread request handling under many concurrent clients
+ *
+ * For each mode the application is started on a fresh database and seeded,
+ * then closed-model clients (each sends its next /next request as soon as
+ * the previous one answered) are run at every configured concurrency level.
+ * Throughput, latency percentiles and 503 rejections are written to
+ * concurrency-summary.txt in the load test output directory.
+ *
+ * Both modes run behind the same concurrency limit, so the comparison is of
+ * the thread model alone; --loadtest.concurrency.max-requests sets it. The
+ * clients of each level run in a separate JVM started from the same class
+ * path, so they do not share CPU, heap or GC pauses with the server.
+ *
+ * Clients run on virtual threads, so 10k of them are cheap; this needs
+ * Java 21 or later. Defaults can be overridden like the load test, e.g.
+ * --loadtest.concurrency.clients=1000,5000 --loadtest.duration-seconds=60
+ */
+public final class ConcurrencyBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyBenchmark.class);
+
+    private static final String DEFAULT_CLIENTS = "1000,2000,5000,10000";
+    private static final String DEFAULT_MAX_REQUESTS = "40";
+    // Set only in the client JVM, to the server it drives
+    private static final String BASE_URL = "loadtest.concurrency.base-url";
+    private static final String RESULT_PREFIX = "RESULT ";
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    private ConcurrencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            log.error("The concurrency benchmark needs Java 21 or later, running on {}",
+                    System.getProperty("java.version"));
+            System.exit(1);
+        }
+
+        String baseUrl = argument(args, BASE_URL, null);
+        if (baseUrl != null) {
+            runClients(baseUrl, args);
+            System.exit(0);
+        }
+
+        int[] clientCounts = parseClients(argument(args, "loadtest.concurrency.clients", DEFAULT_CLIENTS));
+        int maxClients = 0;
+        for (int clients : clientCounts) {
+            maxClients = Math.max(maxClients, clients);
+        }
+
+        List<String> lines = new ArrayList<>();
+        File outputDirectory = null;
+        for (boolean virtualThreads : new boolean[] { false, true }) {
+            Map<String, Object> overrides = new HashMap<>();
+            overrides.put("campaign.web.virtual-threads.enabled", virtualThreads);
+            overrides.put("campaign.web.concurrency.enabled", true);
+            overrides.put("campaign.web.concurrency.max-requests",
+                    Integer.parseInt(argument(args, "loadtest.concurrency.max-requests", DEFAULT_MAX_REQUESTS)));
+            overrides.put("server.tomcat.max-connections", maxClients * 2);
+            overrides.put("server.tomcat.accept-count", maxClients);
+
+            ConfigurableApplicationContext context = LoadTestApplication.start(overrides, args);
+            try {
+                LoadTestSettings settings = context.getBean(LoadTestSettings.class);
+                outputDirectory = settings.getOutputDirectory();
+                context.getBean(DatasetSeeder.class).seed();
+
+                String mode = virtualThreads ? "virtual" : "platform";
+                for (int clients : clientCounts) {
+                    lines.add(run(mode, clients, settings, LoadTestApplication.baseUrl(context)));
+                }
+            } finally {
+                SpringApplication.exit(context);
+            }
+        }
+
+        write(outputDirectory, lines);
+        System.exit(0);
+    }
+
+    /**
+     * Run one concurrency level in a client JVM and return its summary line
+     */
+    private static String run(String mode, int clients, LoadTestSettings settings, String baseUrl)
+            throws IOException, InterruptedException {
+        
+        log.warn("Running {} clients against {} threads", clients, mode);
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        // Let every client keep its connection alive, read once by the JDK
+        command.add("-Dhttp.maxConnections=" + clients);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ConcurrencyBenchmark.class.getName());
+        command.add("--" + BASE_URL + "=" + baseUrl);
+        command.add("--loadtest.concurrency.mode=" + mode);
+        command.add("--loadtest.concurrency.clients=" + clients);
+        command.add("--loadtest.users=" + settings.getUsers());
+        command.add("--loadtest.companies=" + settings.getCompanies());
+        command.add("--loadtest.warmup-seconds=" + settings.getWarmupSeconds());
+        command.add("--loadtest.duration-seconds=" + settings.getDurationSeconds());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader out = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line.substring(RESULT_PREFIX.length());
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || result == null) {
+            throw new IllegalStateException("Client JVM for " + clients + " " + mode 
+                    + " clients failed with exit code " + exitCode);
+        }
+        return result;
+    }
+
+    /**
+     * Run the clients of one concurrency level against a running server
+     * Entry point of the client JVM; prints the summary line to standard out
+     */
+    private static void runClients(String baseUrl, String[] args) throws InterruptedException {
+        String mode = argument(args, "loadtest.concurrency.mode", "unknown");
+        int clients = Integer.parseInt(argument(args, "loadtest.concurrency.clients", "1000"));
+        int users = Integer.parseInt(argument(args, "loadtest.users", "100000"));
+        int companies = Integer.parseInt(argument(args, "loadtest.companies", "50"));
+        int warmupSeconds = Integer.parseInt(argument(args, "loadtest.warmup-seconds", "30"));
+        int durationSeconds = Integer.parseInt(argument(args, "loadtest.duration-seconds", "120"));
+
+        String requestDate = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+        Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        LongAdder rejected = new LongAdder();
+        LongAdder errors = new LongAdder();
+
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("loadtest-client-");
+        for (int client = 0; client < clients; client++) {
+            executor.execute(() -> {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    int user = ThreadLocalRandom.current().nextInt(users);
+                    String url = baseUrl + "/api/v1/rotatecampaign/next?date=" + requestDate
+                            + "&company=" + LoadTestSettings.companyName(user % companies) 
+                            + "&userId=" + LoadTestSettings.userId(user);
+                    boolean measuring = now >= warmupEnd;
+                    try {
+                        int status = get(url);
+                        if (measuring) {
+                            if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                                rejected.increment();
+                            } else if (status >= 500) {
+                                errors.increment();
+                            } else {
+                                recorder.recordValue(Math.min(System.nanoTime() - now, HIGHEST_TRACKABLE_NANOS));
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (measuring) {
+                            errors.increment();
+                        }
+                    }
+                }
+            });
+        }
+        if (System.nanoTime() >= warmupEnd) {
+            log.warn("Starting {} clients took longer than the warmup", clients);
+        }
+        
+        executor.shutdown();
+        executor.awaitTermination(TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()) + TIMEOUT_MILLIS * 2L,
+                TimeUnit.MILLISECONDS);
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        double seconds = durationSeconds;
+        System.out.println(RESULT_PREFIX + String.format("%-9s %8d %10d %10.1f %10.2f %10.2f %10.2f %10d %8d",
+                mode, clients, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50.0) / 1e6, histogram.getValueAtPercentile(99.0) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, rejected.sum(), errors.sum()));
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        int status = connection.getResponseCode();
+        // Drain the body so the connection can be reused
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+        }
+        return status;
+    }
+
+    private static void write(File directory, List<String> lines) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(new File(directory, "concurrency-summary.txt")))) {
+            out.printf("%-9s %8s %10s %10s %10s %10s %10s %10s %8s%n",
+                    "threads", "clients", "ok", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "rejected", "errors");
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+        for (String line : lines) {
+            log.warn(line);
+        }
+    }
+
+    private static String argument(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int[] parseClients(String value) {
+        String[] parts = value.split(",");
+        int[] clients = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            clients[i] = Integer.parseInt(parts[i].trim());
+        }
+        return clients;
+    }
+}
@@ -0,0 +1,157 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.usbank.corp.dcr.api.service.CampaignCompanyIndex;
+import com.usbank.corp.dcr.api.service.CampaignRotationManager;
+import com.usbank.corp.dcr.api.service.CampaignViewCounter;
+import com.usbank.corp.dcr.api.service.WeeklyViewerFilter;
+
+/**
+ * Seeds the load test database with companies, campaigns, users and history
+ *
+ * Campaign i belongs to company i % companies, and every tenth campaign is
+ * also shared with the next company. History rows fall in the eight weeks
+ * before the current one, so every user is eligible again this week and
+ * capping counts are realistic. The seed is fixed, so runs are comparable.
+ */
+@Component
+public class DatasetSeeder {
+
+    private static final Logger log = LoggerFactory.getLogger(DatasetSeeder.class);
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String INSERT_CAMPAIGN = "INSERT INTO [dbo].[campaigns_dev_rotation1] "
+            + "(id, name, banner_id, insight_type, insight_sub_type, insight, company_names, "
+            + "start_date, end_date, frequency_per_week, original_frequency_per_week, display_capping, "
+            + "created_by, created_date, status, visibility) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_HISTORY = "INSERT INTO [dbo].[user_campaign_history] "
+            + "(id, user_id, campaign_id, view_date, has_clicked_learn_more, has_submitted_form) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    // The DBA script's history indexes, unpartitioned; see UserCampaignHistoryCompactor
+    private static final String[] HISTORY_INDEXES = {
+            "CREATE INDEX ix_history_user ON [dbo].[user_campaign_history] (user_id, view_date)",
+            "CREATE INDEX ix_history_epoch_week ON [dbo].[user_campaign_history] (epoch_week, id)",
+            "CREATE INDEX ix_history_recorded_at ON [dbo].[user_campaign_history] (recorded_at)" };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LoadTestSettings settings;
+    private final CampaignCompanyIndex campaignCompanyIndex;
+    private final CampaignViewCounter campaignViewCounter;
+    private final CampaignRotationManager campaignRotationManager;
+    private final WeeklyViewerFilter weeklyViewerFilter;
+
+    @Autowired
+    public DatasetSeeder(JdbcTemplate jdbcTemplate, LoadTestSettings settings,
+                         CampaignCompanyIndex campaignCompanyIndex,
+                         CampaignViewCounter campaignViewCounter,
+                         CampaignRotationManager campaignRotationManager,
+                         WeeklyViewerFilter weeklyViewerFilter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+        this.campaignCompanyIndex = campaignCompanyIndex;
+        this.campaignViewCounter = campaignViewCounter;
+        this.campaignRotationManager = campaignRotationManager;
+        this.weeklyViewerFilter = weeklyViewerFilter;
+    }
+
+    public void seed() {
+        long start = System.nanoTime();
+        Random random = new Random(2025);
+        LocalDate today = LocalDate.now();
+
+        seedCampaigns(random, today);
+        seedHistory(random, today);
+        for (String index : HISTORY_INDEXES) {
+            jdbcTemplate.execute(index);
+        }
+
+        // Bring the derived state up to date, as a restart would
+        campaignCompanyIndex.rebuild();
+        campaignViewCounter.backfillAll();
+        campaignRotationManager.loadRotationPlans();
+        weeklyViewerFilter.load();
+
+        log.info("Seeded {} companies, {} campaigns, {} users and {} history rows in {} s",
+                settings.getCompanies(), settings.getCampaigns(), settings.getUsers(), settings.getHistoryRows(),
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    }
+
+    private void seedCampaigns(Random random, LocalDate today) {
+        int companies = settings.getCompanies();
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+
+        for (int i = 0; i < settings.getCampaigns(); i++) {
+            String companyNames = LoadTestSettings.companyName(i % companies);
+            if (i % 10 == 0 && companies > 1) {
+                companyNames += "|" + LoadTestSettings.companyName((i + 1) % companies);
+            }
+
+            int frequency = 50 + random.nextInt(500);
+            batch.add(new Object[] {
+                    campaignId(i), "Campaign " + i, "banner-" + i, "INSIGHT", "GENERAL", "Insight text " + i,
+                    companyNames,
+                    java.sql.Date.valueOf(today.minusDays(random.nextInt(60))),
+                    java.sql.Date.valueOf(today.plusDays(30 + random.nextInt(90))),
+                    frequency, frequency, 3 + random.nextInt(20),
+                    "loadtest", Timestamp.valueOf(today.minusDays(90).atStartOfDay().plusMinutes(i)),
+                    "ACTIVE", "VISIBLE" });
+
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_CAMPAIGN, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CAMPAIGN, batch);
+        }
+    }
+
+    private void seedHistory(Random random, LocalDate today) {
+        int companies = settings.getCompanies();
+        int campaignsPerCompany = Math.max(1, settings.getCampaigns() / companies);
+        LocalDate currentWeekStart = today.minusDays(today.getDayOfWeek().getValue() - 1L);
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+
+        for (int row = 0; row < settings.getHistoryRows(); row++) {
+            int user = random.nextInt(settings.getUsers());
+            int campaign = Math.min(settings.getCampaigns() - 1,
+                    user % companies + companies * random.nextInt(campaignsPerCompany));
+            Timestamp viewDate = Timestamp.valueOf(currentWeekStart.minusDays(1 + random.nextInt(56))
+                    .atStartOfDay().plusSeconds(random.nextInt(86400)));
+            boolean clicked = random.nextInt(10) == 0;
+
+            batch.add(new Object[] {
+                    UUID.randomUUID().toString(), LoadTestSettings.userId(user), campaignId(campaign), viewDate,
+                    clicked, clicked && random.nextInt(3) == 0 });
+
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_HISTORY, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_HISTORY, batch);
+        }
+    }
+
+    private static String campaignId(int campaign) {
+        return String.format("campaign-%06d", campaign);
+    }
+}
@@ -0,0 +1,111 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency and error counts per operation of a load test run
+ *
+ * Latencies are recorded in nanoseconds into one HDR histogram recorder per
+ * operation, which is safe to record into from many threads without locks.
+ * The report is written as one .hgrm percentile file per operation, in
+ * milliseconds, plus a summary of throughput and p50/p99/p99.9.
+ */
+public class LatencyReport {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> results = new EnumMap<>(Operation.class);
+    private volatile long measurementStartNanos = System.nanoTime();
+    private volatile long measurementNanos;
+
+    public LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public void recordLatency(Operation operation, long nanos) {
+        recorders.get(operation).recordValue(Math.min(Math.max(nanos, 1), HIGHEST_TRACKABLE_NANOS));
+    }
+
+    public void recordError(Operation operation) {
+        errors.get(operation).incrementAndGet();
+    }
+
+    /**
+     * Discard everything recorded so far, called at the end of the warmup
+     */
+    public void reset() {
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).reset();
+            errors.get(operation).set(0);
+        }
+        measurementStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Freeze the measurement window, called once the last request completed
+     */
+    public void finish() {
+        measurementNanos = System.nanoTime() - measurementStartNanos;
+        for (Operation operation : Operation.values()) {
+            results.put(operation, recorders.get(operation).getIntervalHistogram());
+        }
+    }
+
+    public long getErrorCount() {
+        return errors.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * Write the percentile distributions and the summary
+     *
+     * @param directory Output directory, created if missing
+     * @throws IOException if a report file cannot be written
+     */
+    public void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        double seconds = measurementNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        try (PrintStream summary = new PrintStream(new FileOutputStream(new File(directory, "summary.txt")))) {
+            summary.printf("%-12s %10s %8s %10s %10s %10s %10s %10s%n",
+                    "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = results.get(operation);
+                try (PrintStream out = new PrintStream(new FileOutputStream(
+                        new File(directory, operation.getName() + ".hgrm")))) {
+                    histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+                }
+
+                summary.printf("%-12s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                        operation.getName(), histogram.getTotalCount(), errors.get(operation).get(),
+                        seconds > 0 ? histogram.getTotalCount() / seconds : 0.0,
+                        millis(histogram.getValueAtPercentile(50.0)),
+                        millis(histogram.getValueAtPercentile(99.0)),
+                        millis(histogram.getValueAtPercentile(99.9)),
+                        millis(histogram.getMaxValue()));
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,103 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * End-to-end load test of the rotation campaign API
+ *
+ * Boots the full application on a random port against an in-memory H2
+ * database in SQL Server mode, seeds it, drives open-model traffic at the
+ * rotation endpoints and writes HDR histogram reports. Any loadtest.*
+ * setting can be overridden on the command line, e.g.
+ * --loadtest.rate-per-second=800 --loadtest.users=200000
+ */
+@SpringBootApplication(scanBasePackages = "com.usbank.corp.dcr.api")
+@EntityScan("com.usbank.corp.dcr.api.entity")
+@EnableJpaRepositories("com.usbank.corp.dcr.api.repository")
+public class LoadTestApplication {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestApplication.class);
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = start(new HashMap<>(), args);
+
+        int exitCode = 1;
+        try {
+            LoadTestSettings settings = context.getBean(LoadTestSettings.class);
+
+            context.getBean(DatasetSeeder.class).seed();
+            LatencyReport report = new OpenModelDriver(settings, baseUrl(context)).run();
+            report.write(settings.getOutputDirectory());
+
+            exitCode = report.getErrorCount() == 0 ? 0 : 2;
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+
+    /**
+     * Start the application on a fresh in-memory database
+     *
+     * @param overrides Properties replacing the load test defaults
+     * @param args Command line arguments, these win over everything else
+     * @return Running application context
+     */
+    static ConfigurableApplicationContext start(Map<String, Object> overrides, String... args) {
+        Map<String, Object> properties = defaultProperties();
+        properties.putAll(overrides);
+        return new SpringApplicationBuilder(LoadTestApplication.class)
+                .properties(properties)
+                .run(args);
+    }
+
+    /**
+     * Start one of several instances sharing a named in-memory database
+     * The first instance creates the schema, the others use it as it is
+     *
+     * @param database Name of the shared database
+     * @param first Whether this instance creates the schema
+     * @param overrides Properties replacing the load test defaults
+     * @param args Command line arguments, these win over everything else
+     * @return Running application context
+     */
+    static ConfigurableApplicationContext startInstance(String database, boolean first,
+            Map<String, Object> overrides, String... args) {
+        Map<String, Object> properties = new HashMap<>(overrides);
+        properties.put("spring.datasource.url", "jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1;"
+                + "MODE=MSSQLServer;DATABASE_TO_UPPER=FALSE;INIT=CREATE SCHEMA IF NOT EXISTS dbo");
+        properties.put("spring.jpa.hibernate.ddl-auto", first ? "create" : "none");
+        return start(properties, args);
+    }
+
+    static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static Map<String, Object> defaultProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=MSSQLServer;DATABASE_TO_UPPER=FALSE;"
+                + "INIT=CREATE SCHEMA IF NOT EXISTS dbo");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create");
+        properties.put("spring.jpa.properties.hibernate.default_schema", "dbo");
+        properties.put("spring.jpa.open-in-view", false);
+        properties.put("logging.level.com.usbank.corp.dcr.api", "WARN");
+        return properties;
+    }
+}
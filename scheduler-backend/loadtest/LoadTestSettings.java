@@ -0,0 +1,72 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.io.File;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+
+/**
+ * Dataset size and traffic shape of a load test run
+ */
+@Component
+@Getter
+public class LoadTestSettings {
+
+    private final int companies;
+    private final int campaigns;
+    private final int users;
+    private final int historyRows;
+    private final double ratePerSecond;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int workers;
+    private final int nextWeight;
+    private final int learnMoreWeight;
+    private final int formSubmitWeight;
+    private final File outputDirectory;
+
+    @Autowired
+    public LoadTestSettings(@Value("${loadtest.companies:50}") int companies,
+                            @Value("${loadtest.campaigns:2000}") int campaigns,
+                            @Value("${loadtest.users:100000}") int users,
+                            @Value("${loadtest.history-rows:500000}") int historyRows,
+                            @Value("${loadtest.rate-per-second:500}") double ratePerSecond,
+                            @Value("${loadtest.warmup-seconds:30}") int warmupSeconds,
+                            @Value("${loadtest.duration-seconds:120}") int durationSeconds,
+                            @Value("${loadtest.workers:64}") int workers,
+                            @Value("${loadtest.mix.next:80}") int nextWeight,
+                            @Value("${loadtest.mix.learnmore:15}") int learnMoreWeight,
+                            @Value("${loadtest.mix.formsubmit:5}") int formSubmitWeight,
+                            @Value("${loadtest.output-dir:target/loadtest}") String outputDirectory) {
+        this.companies = companies;
+        this.campaigns = campaigns;
+        this.users = users;
+        this.historyRows = historyRows;
+        this.ratePerSecond = ratePerSecond;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+        this.workers = workers;
+        this.nextWeight = nextWeight;
+        this.learnMoreWeight = learnMoreWeight;
+        this.formSubmitWeight = formSubmitWeight;
+        this.outputDirectory = new File(outputDirectory);
+    }
+
+    /**
+     * @return Company of a seeded user, users are spread evenly over companies
+     */
+    public String companyOf(int user) {
+        return companyName(user % companies);
+    }
+
+    public static String companyName(int company) {
+        return String.format("COMPANY-%04d", company);
+    }
+
+    public static String userId(int user) {
+        return String.format("user-%07d", user);
+    }
+}
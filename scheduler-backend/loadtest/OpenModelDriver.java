@@ -0,0 +1,229 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Open-model traffic generator for the rotation endpoints
+ *
+ * Requests arrive as a Poisson process at the configured rate no matter how
+ * fast the server answers, the way independent users would. Each request's
+ * latency is measured from its scheduled arrival rather than from when a
+ * worker picked it up, so queueing behind a slow server is part of the
+ * result instead of being hidden (coordinated omission).
+ *
+ * Campaigns served by /next are remembered, so learn-more clicks and form
+ * submissions are issued for campaigns the user has actually seen. When
+ * nothing has been served yet those arrivals become /next calls.
+ */
+public class OpenModelDriver {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenModelDriver.class);
+
+    private static final String API_PATH = "/api/v1/rotatecampaign";
+    private static final int SERVED_CAPACITY = 10000;
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final LoadTestSettings settings;
+    private final String baseUrl;
+    private final String requestDate = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Served> served = new ArrayBlockingQueue<>(SERVED_CAPACITY);
+    private final BlockingQueue<Served> clicked = new ArrayBlockingQueue<>(SERVED_CAPACITY);
+    private final LatencyReport report = new LatencyReport();
+
+    public OpenModelDriver(LoadTestSettings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl + API_PATH;
+    }
+
+    /**
+     * Drive traffic for the warmup and the measurement period
+     *
+     * @return Latencies recorded after the warmup
+     * @throws InterruptedException if interrupted while waiting for requests to finish
+     */
+    public LatencyReport run() throws InterruptedException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(settings.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRatePerSecond();
+        boolean measuring = false;
+        long arrivals = 0;
+
+        log.warn("Driving {} req/s for {} s warmup and {} s measurement",
+                settings.getRatePerSecond(), settings.getWarmupSeconds(), settings.getDurationSeconds());
+
+        long arrival = start;
+        while (true) {
+            arrival += (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos);
+            if (arrival >= end) {
+                break;
+            }
+            if (!measuring && arrival >= warmupEnd) {
+                report.reset();
+                measuring = true;
+            }
+
+            long wait;
+            while ((wait = arrival - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            long intendedStart = arrival;
+            boolean record = measuring;
+            workers.execute(() -> issue(intendedStart, record));
+            arrivals++;
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(TIMEOUT_MILLIS * 2L, TimeUnit.MILLISECONDS)) {
+            log.warn("Requests still running after the measurement, stopping them");
+            workers.shutdownNow();
+        }
+        report.finish();
+
+        log.warn("Issued {} requests, {} errors after warmup", arrivals, report.getErrorCount());
+        return report;
+    }
+
+    private void issue(long intendedStart, boolean record) {
+        Operation operation = pickOperation();
+        Served target = null;
+        if (operation == Operation.FORM_SUBMIT) {
+            target = clicked.poll();
+        } else if (operation == Operation.LEARN_MORE) {
+            target = served.poll();
+        }
+        if (operation != Operation.NEXT && target == null) {
+            operation = Operation.NEXT;
+        }
+
+        try {
+            switch (operation) {
+                case LEARN_MORE:
+                    post("/" + target.campaignId + "/learnmore?userId=" + encode(target.userId));
+                    clicked.offer(target);
+                    break;
+                case FORM_SUBMIT:
+                    post("/" + target.campaignId + "/formsubmit?userId=" + encode(target.userId));
+                    break;
+                default:
+                    next();
+                    break;
+            }
+            if (record) {
+                report.recordLatency(operation, System.nanoTime() - intendedStart);
+            }
+        } catch (IOException e) {
+            if (record) {
+                report.recordError(operation);
+            }
+            log.debug("{} request failed", operation.getName(), e);
+        }
+    }
+
+    private Operation pickOperation() {
+        int total = settings.getNextWeight() + settings.getLearnMoreWeight() + settings.getFormSubmitWeight();
+        int pick = ThreadLocalRandom.current().nextInt(Math.max(total, 1));
+        if (pick < settings.getNextWeight()) {
+            return Operation.NEXT;
+        }
+        return pick < settings.getNextWeight() + settings.getLearnMoreWeight()
+                ? Operation.LEARN_MORE : Operation.FORM_SUBMIT;
+    }
+
+    private void next() throws IOException {
+        int user = ThreadLocalRandom.current().nextInt(settings.getUsers());
+        String userId = LoadTestSettings.userId(user);
+        String body = call("GET", "/next?date=" + requestDate
+                + "&company=" + encode(settings.companyOf(user)) + "&userId=" + encode(userId));
+
+        // 204 means nothing was served to this user
+        if (body != null && !body.isEmpty()) {
+            JsonNode id = objectMapper.readTree(body).path("id");
+            if (id.isTextual()) {
+                served.offer(new Served(userId, id.asText()));
+            }
+        }
+    }
+
+    private void post(String path) throws IOException {
+        call("POST", path);
+    }
+
+    /**
+     * Issue one request and read the whole response
+     *
+     * @return Body of a 2xx response, null for a 4xx response
+     * @throws IOException on connection failures and 5xx responses
+     */
+    private String call(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        int status = connection.getResponseCode();
+        InputStream stream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String body = stream != null ? read(stream) : "";
+        if (status >= 500) {
+            throw new IOException(method + " " + path + " returned " + status);
+        }
+        return status < 300 ? body : null;
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    private static final class Served {
+        private final String userId;
+        private final String campaignId;
+
+        Served(String userId, String campaignId) {
+            this.userId = userId;
+            this.campaignId = campaignId;
+        }
+    }
+}
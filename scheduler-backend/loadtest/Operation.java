@@ -0,0 +1,20 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+/**
+ * Operations issued by the load test driver
+ */
+public enum Operation {
+    NEXT("next"),
+    LEARN_MORE("learnmore"),
+    FORM_SUBMIT("formsubmit");
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
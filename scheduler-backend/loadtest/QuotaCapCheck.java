@@ -0,0 +1,153 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.usbank.corp.dcr.api.exception.DataHandlingException;
+import com.usbank.corp.dcr.api.service.CampaignQuotaCounters;
+import com.usbank.corp.dcr.api.service.UserCampaignService;
+
+/**
+ * Checks that several instances never hand out more than a campaign's weekly quota
+ *
+ * Starts several instances of the application in this JVM on one shared
+ * in-memory H2 database, creates a campaign with a small weekly quota and
+ * records views of it from many threads on every instance at once, with a
+ * small lease size so the instances keep claiming from the row. Fails with
+ * exit code 2 if more views were accepted than the quota, or if the row does
+ * not account for exactly the accepted views once every instance has
+ * returned its unused leases. Defaults can be overridden on the command
+ * line, e.g. --check.instances=8 --check.quota=2000
+ */
+public final class QuotaCapCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(QuotaCapCheck.class);
+
+    private static final String DATABASE = "quota-check";
+    private static final String CAMPAIGN_ID = "quota-check-campaign";
+    private static final int THREADS_PER_INSTANCE = 16;
+
+    private static final String INSERT_CAMPAIGN = "INSERT INTO [dbo].[campaigns_dev_rotation1] "
+            + "(id, name, banner_id, insight_type, insight_sub_type, insight, company_names, "
+            + "start_date, end_date, frequency_per_week, original_frequency_per_week, display_capping, "
+            + "created_by, created_date, status, visibility) "
+            + "VALUES (?, 'Quota check', 'banner', 'INSIGHT', 'GENERAL', 'Quota check', 'COMPANY_0', "
+            + "?, ?, ?, ?, 1000000, 'quota-check', ?, 'ACTIVE', 'VISIBLE')";
+
+    private static final String SELECT_QUOTA = "SELECT frequency_per_week FROM [dbo].[campaigns_dev_rotation1] "
+            + "WHERE id = ?";
+
+    private QuotaCapCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = Integer.parseInt(argument(args, "check.instances", "4"));
+        int quota = Integer.parseInt(argument(args, "check.quota", "500"));
+        int attempts = quota * 3;
+
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("campaign.quota.lease-size", 7);
+        overrides.put("campaign.quota.exhausted-retry-seconds", 0);
+
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        int exitCode = 1;
+        try {
+            for (int i = 0; i < instances; i++) {
+                contexts.add(LoadTestApplication.startInstance(DATABASE, i == 0, overrides, args));
+            }
+
+            JdbcTemplate jdbcTemplate = contexts.get(0).getBean(JdbcTemplate.class);
+            LocalDate today = LocalDate.now();
+            jdbcTemplate.update(INSERT_CAMPAIGN, CAMPAIGN_ID, java.sql.Date.valueOf(today.minusDays(7)),
+                    java.sql.Date.valueOf(today.plusDays(7)), quota, quota, Timestamp.valueOf(today.atStartOfDay()));
+
+            int served = recordViews(contexts, attempts);
+
+            // Stopping an instance returns its unused leases to the row
+            while (contexts.size() > 1) {
+                SpringApplication.exit(contexts.remove(contexts.size() - 1));
+            }
+            contexts.get(0).getBean(CampaignQuotaCounters.class).releaseLeases();
+            Integer remaining = jdbcTemplate.queryForObject(SELECT_QUOTA, Integer.class, CAMPAIGN_ID);
+
+            log.warn("{} instances accepted {} of {} views against a weekly quota of {}, {} left on the row",
+                    instances, served, attempts, quota, remaining);
+            if (served > quota) {
+                log.error("Weekly quota exceeded by {} views", served - quota);
+                exitCode = 2;
+            } else if (remaining == null || remaining != quota - served) {
+                log.error("Campaign row does not match the accepted views: expected {} left, found {}",
+                        quota - served, remaining);
+                exitCode = 2;
+            } else {
+                exitCode = 0;
+            }
+        } catch (Exception e) {
+            log.error("Quota check failed", e);
+        } finally {
+            for (ConfigurableApplicationContext context : contexts) {
+                SpringApplication.exit(context);
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Record views from every instance at once
+     *
+     * @return Number of views accepted
+     */
+    private static int recordViews(List<ConfigurableApplicationContext> contexts, int attempts)
+            throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger served = new AtomicInteger();
+        Date today = new Date();
+
+        ExecutorService executor = Executors.newFixedThreadPool(contexts.size() * THREADS_PER_INSTANCE);
+        for (int i = 0; i < contexts.size() * THREADS_PER_INSTANCE; i++) {
+            UserCampaignService service = contexts.get(i % contexts.size()).getBean(UserCampaignService.class);
+            executor.execute(() -> {
+                int attempt;
+                while ((attempt = next.getAndIncrement()) < attempts) {
+                    try {
+                        service.recordCampaignView("quota-check-user-" + attempt, CAMPAIGN_ID, today);
+                        served.incrementAndGet();
+                    } catch (DataHandlingException e) {
+                        // Quota exhausted
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Views were still being recorded after 5 minutes");
+        }
+        return served.get();
+    }
+
+    private static String argument(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
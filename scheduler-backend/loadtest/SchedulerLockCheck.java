@@ -0,0 +1,223 @@
+package com.usbank.corp.dcr.api.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.usbank.corp.dcr.api.service.SchedulerLockService;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.Lease;
+import com.usbank.corp.dcr.api.service.SchedulerLockService.LeaseLostException;
+
+/**
+ * Checks that a job guarded by SchedulerLockService runs once across a failover
+ *
+ * Starts two instances of the application in this JVM on one shared
+ * in-memory H2 database with a short lease. The first instance takes the
+ * lease of a check job and works through a run chunk by chunk, writing each
+ * chunk and its checkpoint in one transaction. Halfway through, its renewals
+ * stop as if the node had died or frozen. The second instance must not get
+ * the lease while the first still holds it, must get it once it expires and
+ * must resume after the last checkpoint. The first instance then wakes up
+ * and tries to write its next chunk with its old fencing token, which must
+ * be rejected and rolled back. Fails with exit code 2 unless every chunk was
+ * written exactly once, by the node that held the lease at the time.
+ * Defaults can be overridden on the command line, e.g. --check.lease-ms=5000
+ */
+public final class SchedulerLockCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerLockCheck.class);
+
+    private static final String DATABASE = "scheduler-lock-check";
+    private static final String JOB_NAME = "scheduler-lock-check";
+    private static final String RUN_KEY = "check-run";
+    private static final int CHUNKS = 10;
+    private static final int CHUNKS_BEFORE_FAILURE = 4;
+
+    private static final String CREATE_CHUNKS = "CREATE TABLE [dbo].[scheduler_lock_check] "
+            + "(chunk INT NOT NULL, node_id VARCHAR(200) NOT NULL)";
+
+    private static final String INSERT_CHUNK = "INSERT INTO [dbo].[scheduler_lock_check] (chunk, node_id) "
+            + "VALUES (?, ?)";
+
+    private static final String SELECT_CHUNKS = "SELECT chunk, node_id FROM [dbo].[scheduler_lock_check] "
+            + "ORDER BY chunk";
+
+    private SchedulerLockCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long leaseMillis = Long.parseLong(argument(args, "check.lease-ms", "2000"));
+
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("campaign.scheduler.lock.lease-ms", leaseMillis);
+
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        int exitCode = 1;
+        try {
+            contexts.add(LoadTestApplication.startInstance(DATABASE, true, overrides, args));
+            contexts.add(LoadTestApplication.startInstance(DATABASE, false, overrides, args));
+            Node leader = new Node(contexts.get(0));
+            Node follower = new Node(contexts.get(1));
+            leader.jdbcTemplate.execute(CREATE_CHUNKS);
+
+            Lease leaderLease = leader.lockService.tryAcquire(JOB_NAME);
+            if (leaderLease == null) {
+                throw new IllegalStateException("Leader could not take the lease of a new job");
+            }
+            for (int chunk = 0; chunk < CHUNKS_BEFORE_FAILURE; chunk++) {
+                leader.writeChunk(leaderLease, chunk);
+            }
+
+            // Renewals keep the lease past its initial length
+            Thread.sleep(leaseMillis * 2);
+            if (follower.lockService.tryAcquire(JOB_NAME) != null) {
+                failures.add("Follower took the lease while the leader still renewed it");
+            }
+
+            // The leader dies mid-run: no more renewals and no release
+            leader.lockService.shutdown();
+            long failedAt = System.currentTimeMillis();
+
+            Lease followerLease = awaitLease(follower, leaseMillis * 5);
+            long takeover = System.currentTimeMillis() - failedAt;
+            if (followerLease == null) {
+                throw new IllegalStateException("Follower did not take over the expired lease");
+            }
+            if (followerLease.getFencingToken() <= leaderLease.getFencingToken()) {
+                failures.add("Fencing token did not grow on takeover: " + leaderLease.getFencingToken()
+                        + " then " + followerLease.getFencingToken());
+            }
+
+            String checkpoint = followerLease.getCheckpoint(RUN_KEY);
+            if (!String.valueOf(CHUNKS_BEFORE_FAILURE - 1).equals(checkpoint)) {
+                failures.add("Follower found checkpoint " + checkpoint + " instead of "
+                        + (CHUNKS_BEFORE_FAILURE - 1));
+            }
+
+            // The leader wakes up and carries on with its stale lease
+            try {
+                leader.writeChunk(leaderLease, CHUNKS_BEFORE_FAILURE);
+                failures.add("Leader wrote a chunk with a stale fencing token");
+            } catch (LeaseLostException e) {
+                // Rejected, and the chunk rolled back with it
+            }
+            try {
+                leaderLease.verify();
+                failures.add("Stale lease still verified");
+            } catch (LeaseLostException e) {
+                // Expected
+            }
+
+            int resumeFrom = checkpoint == null ? 0 : Integer.parseInt(checkpoint) + 1;
+            for (int chunk = resumeFrom; chunk < CHUNKS; chunk++) {
+                follower.writeChunk(followerLease, chunk);
+            }
+            followerLease.complete(RUN_KEY);
+            followerLease.release();
+            if (follower.lockService.hasInterruptedRun(JOB_NAME, RUN_KEY)) {
+                failures.add("Completed run is still reported as interrupted");
+            }
+
+            checkChunks(leader, follower, failures);
+
+            log.warn("Follower took over {} ms after the leader failed, with fencing token {} after {}",
+                    takeover, followerLease.getFencingToken(), leaderLease.getFencingToken());
+            if (failures.isEmpty()) {
+                exitCode = 0;
+            } else {
+                failures.forEach(log::error);
+                exitCode = 2;
+            }
+        } catch (Exception e) {
+            log.error("Scheduler lock check failed", e);
+        } finally {
+            for (ConfigurableApplicationContext context : contexts) {
+                SpringApplication.exit(context);
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Poll for the lease until it is taken or the timeout passes
+     *
+     * @return Lease, or null if the job was still held at the timeout
+     */
+    private static Lease awaitLease(Node node, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            Lease lease = node.lockService.tryAcquire(JOB_NAME);
+            if (lease != null) {
+                return lease;
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+
+    /**
+     * Every chunk written once, the first ones by the leader and the rest by the follower
+     */
+    private static void checkChunks(Node leader, Node follower, List<String> failures) {
+        List<Map<String, Object>> rows = leader.jdbcTemplate.queryForList(SELECT_CHUNKS);
+        if (rows.size() != CHUNKS) {
+            failures.add("Expected " + CHUNKS + " chunk rows, found " + rows.size());
+            return;
+        }
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            Map<String, Object> row = rows.get(chunk);
+            String expectedNode = chunk < CHUNKS_BEFORE_FAILURE
+                    ? leader.lockService.getNodeId()
+                    : follower.lockService.getNodeId();
+            if (((Number) row.get("chunk")).intValue() != chunk || !expectedNode.equals(row.get("node_id"))) {
+                failures.add("Chunk " + chunk + " expected from " + expectedNode + ", found " + row);
+            }
+        }
+    }
+
+    private static String argument(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * The beans of one instance the check drives
+     */
+    private static final class Node {
+        private final SchedulerLockService lockService;
+        private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate transactionTemplate;
+
+        private Node(ConfigurableApplicationContext context) {
+            this.lockService = context.getBean(SchedulerLockService.class);
+            this.jdbcTemplate = context.getBean(JdbcTemplate.class);
+            this.transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        }
+
+        /**
+         * Write one chunk and its checkpoint in one transaction, fenced by the lease
+         */
+        private void writeChunk(Lease lease, int chunk) {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.update(INSERT_CHUNK, chunk, lockService.getNodeId());
+                lease.checkpoint(RUN_KEY, String.valueOf(chunk));
+                return null;
+            });
+        }
+    }
+}